@@ -0,0 +1,68 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.config.ClientRateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the rate limiter adds to a request: an admitted request of a known client, the same spread
+ * over many clients (map lookups that miss the CPU cache), a rejected request, and four threads
+ * sharing one client's bucket (CAS contention).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientRateLimiterBenchmark {
+
+    private static final int CLIENTS = 10_000;
+
+    private ClientRateLimiter unlimited;
+    private ClientRateLimiter exhausted;
+    private String[] clients;
+
+    @Setup
+    public void setUp() {
+        ClientRateLimiter.Limit generous = ClientRateLimiter.Limit.of(1e9, 1_000_000);
+        unlimited = new ClientRateLimiter(generous, generous, 2 * CLIENTS, Duration.ZERO);
+        ClientRateLimiter.Limit tight = ClientRateLimiter.Limit.of(0.001, 1);
+        exhausted = new ClientRateLimiter(tight, tight, 2 * CLIENTS, Duration.ZERO);
+        exhausted.tryAcquire("client1", false);
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "client" + i;
+            unlimited.tryAcquire(clients[i], false);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public long admitted() {
+        return unlimited.tryAcquire("client1", false);
+    }
+
+    @Benchmark
+    public long admittedManyClients(Cursor cursor) {
+        cursor.next = cursor.next + 1 == CLIENTS ? 0 : cursor.next + 1;
+        return unlimited.tryAcquire(clients[cursor.next], false);
+    }
+
+    @Benchmark
+    public long rejected() {
+        return exhausted.tryAcquire("client1", false);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long admittedContended() {
+        return unlimited.tryAcquire("client1", true);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.util.JwtGenerator;
+import com.example.message_store.util.JwtUtil;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving the user of a request: a token that was seen before (verified-token cache hit)
+ * against a full HMAC signature verification, which is what every first request of a token pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "secret-signature-verification-key";
+
+    private JwtUtil jwtUtil;
+    private JwtParser parser;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 10_000);
+        parser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8))).build();
+        token = JwtGenerator.generateToken("client1", "admin", "example.com", TimeUnit.HOURS.toMillis(1));
+    }
+
+    @Benchmark
+    public String extractUsernameCached() {
+        return jwtUtil.extractUsername(token);
+    }
+
+    @Benchmark
+    public String verifySignature() {
+        return parser.parseSignedClaims(token).getPayload().getSubject();
+    }
+}
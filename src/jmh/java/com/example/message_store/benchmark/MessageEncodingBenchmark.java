@@ -0,0 +1,72 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.MessageResponseWithId;
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of writing the message DTOs in each negotiable encoding. The encoded sizes are printed once
+ * per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageEncodingBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private MessageResponse response;
+    private MessageResponseWithId responseWithId;
+    private Page<MessageResponse> page;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json().build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            default -> throw new IllegalArgumentException(format);
+        };
+        response = new MessageResponse("Benchmark message #0 for client1");
+        responseWithId = new MessageResponseWithId(response.content(), TimeOrderedUuidGenerator.generate());
+        List<MessageResponse> content = IntStream.range(0, PAGE_SIZE)
+                .mapToObj(i -> new MessageResponse("Benchmark message #" + i + " for client1"))
+                .toList();
+        page = new PageImpl<>(content, PageRequest.of(0, PAGE_SIZE), 10_000);
+        System.out.printf("%n%s bytes: response %d, responseWithId %d, page %d%n", format,
+                serializeResponse().length, serializeResponseWithId().length, serializePage().length);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serializeResponseWithId() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(responseWithId);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
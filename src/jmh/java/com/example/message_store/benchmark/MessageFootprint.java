@@ -0,0 +1,160 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.MessageStoreApplication;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.repository.ClientRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.service.MessageContentCompressor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Heap retained by stored messages with and without content compression. Boots the application
+ * once per mode against a fresh in-memory H2 database, inserts the same generated data set through
+ * the {@link MessageStore} (no search index or caches involved) and reports the heap still in use
+ * after a full GC, plus the time to read all content back.
+ * <p>
+ * The data set mimics what clients post: 70% short chat-style messages of 40 to 400 characters and
+ * 30% JSON documents of 1 to 16 KB (orders with line items, addresses and free-text notes).
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec@footprint -Dfootprint.args="--messages=20000"
+ * </pre>
+ * Options: {@code --messages}, {@code --seed}; any other {@code --key=value} is passed on to the
+ * application.
+ */
+public class MessageFootprint {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String[] WORDS = ("order shipment delayed customer invoice payment refund warehouse pallet "
+            + "delivery address confirmed pending priority express standard return damaged replacement tracking "
+            + "carrier signature weekend morning please call before arrival thanks regards team support").split(" ");
+    private static final String[] CITIES = {"Berlin", "Hamburg", "Munich", "Vienna", "Zurich", "Prague", "Warsaw"};
+
+    public static void main(String[] args) throws Exception {
+        int messages = 20_000;
+        long seed = 42;
+        List<String> applicationArgs = new ArrayList<>(List.of(
+                "--server.port=0", "--spring.main.banner-mode=off", "--logging.level.root=WARN"));
+        for (String arg : args) {
+            if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(arg.substring("--messages=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        System.out.printf("%-12s %10s %12s %12s %14s %12s %12s%n",
+                "compression", "messages", "content MB", "deflated %", "retained MB", "bytes/msg", "read all ms");
+        for (boolean compression : new boolean[]{false, true}) {
+            List<String> modeArgs = new ArrayList<>(applicationArgs);
+            modeArgs.add("--message.compression.enabled=" + compression);
+            measure(compression, messages, seed, modeArgs.toArray(String[]::new));
+        }
+    }
+
+    private static void measure(boolean compression, int messages, long seed, String[] args) throws InterruptedException {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MessageStoreApplication.class).run(args)) {
+            MessageStore messageStore = context.getBean(MessageStore.class);
+            MessageContentCompressor compressor = context.getBean(MessageContentCompressor.class);
+            Client client = context.getBean(ClientRepository.class).findByUsername("client1");
+            TransactionTemplate readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            readOnly.setReadOnly(true);
+
+            long seeded = contentLength(messageStore, readOnly);
+            long before = retainedHeap();
+            Random random = new Random(seed);
+            long contentChars = 0;
+            int deflated = 0;
+            for (int inserted = 0; inserted < messages; inserted += BATCH_SIZE) {
+                List<Message> batch = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < Math.min(BATCH_SIZE, messages - inserted); i++) {
+                    String content = random.nextInt(10) < 7 ? chat(random) : document(random);
+                    contentChars += content.length();
+                    Message message = compressor.compress(new Message(content, client));
+                    deflated += message.isCompressed() ? 1 : 0;
+                    batch.add(message);
+                }
+                messageStore.saveAll(batch);
+            }
+            long retained = retainedHeap() - before;
+
+            long readStart = System.nanoTime();
+            long readChars = contentLength(messageStore, readOnly) - seeded;
+            long readMillis = (System.nanoTime() - readStart) / 1_000_000;
+            if (readChars != contentChars) {
+                throw new IllegalStateException("Read back " + readChars + " characters, stored " + contentChars);
+            }
+
+            System.out.printf("%-12s %10d %12.1f %12.1f %14.1f %12d %12d%n",
+                    compression ? "on" : "off", messages, contentChars / 1e6, 100.0 * deflated / messages,
+                    retained / 1e6, retained / messages, readMillis);
+        }
+    }
+
+    private static long contentLength(MessageStore messageStore, TransactionTemplate readOnly) {
+        return readOnly.execute(status -> {
+            try (Stream<MessageContent> all = messageStore.streamAllContent()) {
+                return all.mapToLong(message -> message.content().length()).sum();
+            }
+        });
+    }
+
+    private static long retainedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String chat(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = 40 + random.nextInt(360);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    private static String note(Random random) {
+        String text = chat(random);
+        return text.substring(0, Math.min(text.length(), 20 + random.nextInt(60)));
+    }
+
+    private static String document(Random random) {
+        int targetLength = 1024 + random.nextInt(15 * 1024);
+        StringBuilder json = new StringBuilder()
+                .append("{\"orderId\":\"ORD-").append(100000 + random.nextInt(900000))
+                .append("\",\"status\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                .append("\",\"createdAt\":\"2026-0").append(1 + random.nextInt(9)).append('-').append(10 + random.nextInt(18))
+                .append("T").append(10 + random.nextInt(13)).append(":").append(10 + random.nextInt(50)).append(":00Z\"")
+                .append(",\"shippingAddress\":{\"street\":\"").append(WORDS[random.nextInt(WORDS.length)]).append("strasse ")
+                .append(1 + random.nextInt(200)).append("\",\"city\":\"").append(CITIES[random.nextInt(CITIES.length)])
+                .append("\",\"postalCode\":\"").append(10000 + random.nextInt(89999)).append("\"},\"lines\":[");
+        int line = 0;
+        while (json.length() < targetLength) {
+            if (line > 0) {
+                json.append(',');
+            }
+            json.append("{\"line\":").append(++line)
+                    .append(",\"sku\":\"SKU-").append(1000 + random.nextInt(200))
+                    .append("\",\"quantity\":").append(1 + random.nextInt(12))
+                    .append(",\"unitPrice\":").append(random.nextInt(20000) / 100.0)
+                    .append(",\"currency\":\"EUR\",\"note\":\"").append(note(random))
+                    .append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
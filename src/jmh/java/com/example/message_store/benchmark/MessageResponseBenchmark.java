@@ -0,0 +1,68 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+import com.example.message_store.util.CursorCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Response side of the list endpoints: mapping a page of entities to DTOs and writing it with a
+ * Jackson mapper configured the way Spring Boot configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageResponseBenchmark {
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private Page<Message> messages;
+    private Page<MessageResponse> responses;
+    private CursorPageResponse<MessageResponse> cursorResponses;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        Client client = Client.builder().uuid(TimeOrderedUuidGenerator.generate()).username("client1").build();
+        List<Message> content = IntStream.range(0, pageSize)
+                .mapToObj(i -> new Message(TimeOrderedUuidGenerator.generate(), "Benchmark message #" + i + " for client1", client))
+                .toList();
+        messages = new PageImpl<>(content, PageRequest.of(0, pageSize), 10_000);
+        responses = messages.map(MessageResponse::from);
+        cursorResponses = new CursorPageResponse<>(responses.getContent(), pageSize, true,
+                CursorCodec.encode(content.get(content.size() - 1).getUuid()));
+    }
+
+    @Benchmark
+    public Page<MessageResponse> mapPage() {
+        return messages.map(MessageResponse::from);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    @Benchmark
+    public byte[] serializeCursorPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cursorResponses);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.MessageStoreApplication;
+import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.service.ClientService;
+import com.example.message_store.service.MessageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageService} against the application's in-memory H2 database, with the full JPA and
+ * transaction stack but called directly rather than over HTTP. The table grows while {@code save} runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageServiceBenchmark {
+
+    private static final UUID SEEDED_MESSAGE_ID = UUID.fromString("7aa44b54-c479-438b-8bfb-7d205f5357fc");
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private ClientService clientService;
+    private MessageCreateRequest request;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(MessageStoreApplication.class)
+                .run("--server.port=0", "--logging.level.root=WARN");
+        messageService = context.getBean(MessageService.class);
+        clientService = context.getBean(ClientService.class);
+        request = new MessageCreateRequest("Benchmark message for client1");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Message save() {
+        Client client = clientService.getClientReference("client1");
+        return messageService.save(request, client);
+    }
+
+    @Benchmark
+    public Message getById() {
+        return messageService.getById(SEEDED_MESSAGE_ID);
+    }
+
+    @Benchmark
+    public VersionedMessageResponse getResponseByIdCached() {
+        return messageService.getResponseById(SEEDED_MESSAGE_ID);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.message_store.benchmark;
+
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Insert throughput of random (v4) vs time-ordered (v7) primary keys against a bare H2 table,
+ * committed every 1000 rows, over a few rounds so that the later ones run on a warm JIT.
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec@uuid-inserts -Duuid-inserts.args="--rows=500000"
+ * </pre>
+ * Options: {@code --rows}, {@code --rounds}.
+ */
+public class UuidInsertThroughput {
+
+    private static final int COMMIT_EVERY = 1_000;
+
+    public static void main(String[] args) throws SQLException {
+        int rows = 500_000;
+        int rounds = 3;
+        for (String arg : args) {
+            if (arg.startsWith("--rows=")) {
+                rows = Integer.parseInt(arg.substring("--rows=".length()));
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            double random = insertRowsPerSecond("random_" + round, rows, UUID::randomUUID);
+            double timeOrdered = insertRowsPerSecond("time_ordered_" + round, rows, TimeOrderedUuidGenerator::generate);
+            System.out.printf("round %d: %d rows, random v4 %.0f rows/s, time-ordered v7 %.0f rows/s (%.2fx)%n",
+                    round, rows, random, timeOrdered, timeOrdered / random);
+        }
+    }
+
+    private static double insertRowsPerSecond(String database, int rows, Supplier<UUID> ids) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + database, "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE messages(uuid UUID PRIMARY KEY, client_id UUID, content VARCHAR(255) NOT NULL)");
+            }
+            connection.setAutoCommit(false);
+            UUID clientId = UUID.randomUUID();
+            long start = System.nanoTime();
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO messages(uuid, client_id, content) VALUES (?, ?, ?)")) {
+                for (int i = 1; i <= rows; i++) {
+                    insert.setObject(1, ids.get());
+                    insert.setObject(2, clientId);
+                    insert.setString(3, "Benchmark message " + i);
+                    insert.addBatch();
+                    if (i % COMMIT_EVERY == 0) {
+                        insert.executeBatch();
+                        connection.commit();
+                    }
+                }
+                insert.executeBatch();
+                connection.commit();
+            }
+            return rows / ((System.nanoTime() - start) / 1e9);
+        }
+    }
+}
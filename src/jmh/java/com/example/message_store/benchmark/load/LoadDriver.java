@@ -0,0 +1,384 @@
+package com.example.message_store.benchmark.load;
+
+import com.example.message_store.MessageStoreApplication;
+import com.example.message_store.util.JwtGenerator;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * HTTP load driver for {@code /api/v1/messages/}. Boots the application in-process (H2, security,
+ * JWT filter) unless {@code --target} points at a running instance, seeds messages for every user,
+ * then drives a weighted GET/POST/PUT/DELETE mix and prints p50/p99/p99.9 and throughput per
+ * operation.
+ * <p>
+ * In {@code open} mode requests are issued at a fixed arrival rate and latency is measured from the
+ * moment a request was <em>scheduled</em>, not from when a worker got around to sending it, so a
+ * stalled server shows up in the tail instead of silently lowering the request rate (coordinated
+ * omission). In {@code closed} mode every worker sends its next request as soon as the previous one
+ * completed.
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec@load -Dload.args="--mode=open --rate=500 --duration=60s"
+ * </pre>
+ * Options: {@code --mode=open|closed}, {@code --rate} (requests/s, open mode), {@code --concurrency}
+ * (workers), {@code --warmup}, {@code --duration}, {@code --mix=GET:70,POST:15,PUT:10,DELETE:5},
+ * {@code --seed-messages} (per user), {@code --users=client1,client2}, {@code --target=http://host:port}
+ * and {@code --histogram-dir} to write one {@code .hgrm} percentile distribution per operation.
+ * Any other {@code --key=value} is passed on to the in-process application, which runs without the
+ * per-client rate limit unless {@code --rate-limit.enabled=true} is given.
+ */
+public class LoadDriver {
+
+    private static final String MESSAGES_PATH = "/api/v1/messages/";
+    private static final Duration TOKEN_VALIDITY = Duration.ofHours(12);
+
+    private final Options options;
+    private final HttpClient httpClient;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final List<User> users = new ArrayList<>();
+    private URI baseUri;
+
+    LoadDriver(Options options) {
+        this.options = options;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (options.target() != null) {
+            new LoadDriver(options).run(options.target());
+            return;
+        }
+        List<String> applicationArgs = new ArrayList<>(List.of("--server.port=0", "--logging.level.root=WARN"));
+        if (options.applicationArgs().stream().noneMatch(arg -> arg.startsWith("--rate-limit.enabled="))) {
+            // a single user would otherwise be throttled long before the server saturates
+            applicationArgs.add("--rate-limit.enabled=false");
+        }
+        applicationArgs.addAll(options.applicationArgs());
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MessageStoreApplication.class)
+                .run(applicationArgs.toArray(String[]::new))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            new LoadDriver(options).run(URI.create("http://localhost:" + port));
+        }
+    }
+
+    void run(URI target) throws Exception {
+        baseUri = target.resolve(MESSAGES_PATH);
+        for (String username : options.users()) {
+            users.add(new User(username, JwtGenerator.generateToken(username, "admin", "example.com", TOKEN_VALIDITY.toMillis())));
+        }
+        seed();
+
+        System.out.printf("%s loop, %s, %d workers, warmup %s, measuring %s against %s%n",
+                options.mode(), options.mode() == Mode.OPEN ? options.rate() + " req/s" : "no think time",
+                options.concurrency(), options.warmup(), options.duration(), baseUri);
+
+        long measureFrom = System.nanoTime() + options.warmup().toNanos();
+        long deadline = measureFrom + options.duration().toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency());
+        AtomicLong sequence = new AtomicLong();
+        long intervalNanos = options.mode() == Mode.OPEN ? TimeUnit.SECONDS.toNanos(1) / options.rate() : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < options.concurrency(); i++) {
+            workers.execute(() -> {
+                while (true) {
+                    long scheduledAt;
+                    if (options.mode() == Mode.OPEN) {
+                        scheduledAt = start + sequence.getAndIncrement() * intervalNanos;
+                        if (scheduledAt >= deadline) {
+                            return;
+                        }
+                        waitUntil(scheduledAt);
+                    } else {
+                        scheduledAt = System.nanoTime();
+                        if (scheduledAt >= deadline) {
+                            return;
+                        }
+                    }
+                    Operation operation = options.mix().next();
+                    boolean ok = execute(operation);
+                    if (scheduledAt >= measureFrom) {
+                        stats.get(operation).record(System.nanoTime() - scheduledAt, ok);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(options.warmup().plus(options.duration()).toSeconds() + 60, TimeUnit.SECONDS);
+        report();
+    }
+
+    private void seed() throws IOException, InterruptedException {
+        for (User user : users) {
+            for (int i = 0; i < options.seedMessages(); i++) {
+                HttpResponse<Void> response = send(user, post(user));
+                if (response.statusCode() != 201) {
+                    throw new IllegalStateException("Seeding as " + user.username() + " failed with HTTP " + response.statusCode());
+                }
+                user.messageIds().add(createdId(response));
+            }
+        }
+    }
+
+    /**
+     * Sends one request of the given kind. PUT and DELETE use messages of the calling user, GET any
+     * known message; an operation that finds no message to work on falls back to a POST.
+     */
+    private boolean execute(Operation operation) {
+        User user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+        try {
+            switch (operation) {
+                case GET -> {
+                    User owner = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+                    UUID id = owner.messageIds().random();
+                    return id == null ? create(user) : send(user, get(id)).statusCode() == 200;
+                }
+                case PUT -> {
+                    UUID id = user.messageIds().random();
+                    return id == null ? create(user) : send(user, put(user, id)).statusCode() == 200;
+                }
+                case DELETE -> {
+                    UUID id = user.messageIds().removeRandom();
+                    return id == null ? create(user) : send(user, delete(id)).statusCode() == 204;
+                }
+                default -> {
+                    return create(user);
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean create(User user) throws IOException, InterruptedException {
+        HttpResponse<Void> response = send(user, post(user));
+        if (response.statusCode() != 201) {
+            return false;
+        }
+        user.messageIds().add(createdId(response));
+        return true;
+    }
+
+    private HttpResponse<Void> send(User user, HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.header("Authorization", "Bearer " + user.token()).build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpRequest.Builder get(UUID id) {
+        return HttpRequest.newBuilder(baseUri.resolve(id.toString())).GET();
+    }
+
+    private HttpRequest.Builder post(User user) {
+        return HttpRequest.newBuilder(baseUri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body(user)));
+    }
+
+    private HttpRequest.Builder put(User user, UUID id) {
+        return HttpRequest.newBuilder(baseUri.resolve(id.toString()))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body(user)));
+    }
+
+    private HttpRequest.Builder delete(UUID id) {
+        return HttpRequest.newBuilder(baseUri.resolve(id.toString())).DELETE();
+    }
+
+    private static String body(User user) {
+        return "{\"content\":\"Load test message " + ThreadLocalRandom.current().nextInt(1_000_000) + " for " + user.username() + "\"}";
+    }
+
+    private static UUID createdId(HttpResponse<?> response) {
+        String location = response.headers().firstValue("Location")
+                .orElseThrow(() -> new IllegalStateException("Created message without a Location header"));
+        return UUID.fromString(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private static void waitUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void report() throws IOException {
+        double seconds = options.duration().toNanos() / 1e9;
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        System.out.printf("%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+                "op", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            Histogram histogram = entry.getValue().latencies();
+            long errors = entry.getValue().errors().get();
+            total.add(histogram);
+            totalErrors += errors;
+            print(entry.getKey().name(), histogram, errors, seconds);
+            write(entry.getKey().name(), histogram);
+        }
+        print("total", total, totalErrors, seconds);
+        write("total", total);
+    }
+
+    private static void print(String name, Histogram histogram, long errors, double seconds) {
+        System.out.printf("%-8s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                name, histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                histogram.getValueAtPercentile(99.9) / 1e3, histogram.getMaxValue() / 1e3);
+    }
+
+    private void write(String name, Histogram histogram) throws IOException {
+        if (options.histogramDir() == null) {
+            return;
+        }
+        Files.createDirectories(options.histogramDir());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(options.histogramDir().resolve(name.toLowerCase(Locale.ROOT) + ".hgrm")))) {
+            histogram.outputPercentileDistribution(out, 1e3);
+        }
+    }
+
+    enum Mode {OPEN, CLOSED}
+
+    enum Operation {GET, POST, PUT, DELETE}
+
+    /**
+     * Latencies in microseconds; failed requests are counted as errors and kept out of the histogram.
+     */
+    private record OperationStats(Histogram latencies, AtomicLong errors) {
+        OperationStats() {
+            this(new ConcurrentHistogram(3), new AtomicLong());
+        }
+
+        void record(long latencyNanos, boolean ok) {
+            if (ok) {
+                latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    private record User(String username, String token, MessageIds messageIds) {
+        User(String username, String token) {
+            this(username, token, new MessageIds());
+        }
+    }
+
+    /**
+     * Ids of the messages a user currently owns, with O(1) random pick and removal.
+     */
+    private static final class MessageIds {
+        private final List<UUID> ids = new ArrayList<>();
+
+        synchronized void add(UUID id) {
+            ids.add(id);
+        }
+
+        synchronized UUID random() {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        synchronized UUID removeRandom() {
+            if (ids.isEmpty()) {
+                return null;
+            }
+            int index = ThreadLocalRandom.current().nextInt(ids.size());
+            UUID last = ids.remove(ids.size() - 1);
+            return index == ids.size() ? last : ids.set(index, last);
+        }
+    }
+
+    record Mix(Operation[] operations, int[] cumulativeWeights) {
+
+        static Mix parse(String value) {
+            List<Operation> operations = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            int sum = 0;
+            for (String part : value.split(",")) {
+                String[] operationAndWeight = part.trim().split(":");
+                int weight = Integer.parseInt(operationAndWeight[1].trim());
+                if (weight > 0) {
+                    sum += weight;
+                    operations.add(Operation.valueOf(operationAndWeight[0].trim().toUpperCase(Locale.ROOT)));
+                    weights.add(sum);
+                }
+            }
+            if (operations.isEmpty()) {
+                throw new IllegalArgumentException("Request mix has no operation with a positive weight: " + value);
+            }
+            return new Mix(operations.toArray(Operation[]::new), weights.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        Operation next() {
+            int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (pick < cumulativeWeights[i]) {
+                    return operations[i];
+                }
+            }
+            throw new IllegalStateException("Unreachable");
+        }
+    }
+
+    record Options(Mode mode, int rate, int concurrency, Duration warmup, Duration duration, Mix mix,
+                   int seedMessages, List<String> users, URI target, Path histogramDir, List<String> applicationArgs) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            List<String> applicationArgs = new ArrayList<>();
+            Set<String> known = Set.of("mode", "rate", "concurrency", "warmup", "duration", "mix", "seed-messages",
+                    "users", "target", "histogram-dir");
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                String key = arg.startsWith("--") && separator > 0 ? arg.substring(2, separator) : null;
+                if (key != null && known.contains(key)) {
+                    values.put(key, arg.substring(separator + 1));
+                } else {
+                    applicationArgs.add(arg);
+                }
+            }
+            return new Options(
+                    Mode.valueOf(values.getOrDefault("mode", "closed").toUpperCase(Locale.ROOT)),
+                    Integer.parseInt(values.getOrDefault("rate", "200")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "64")),
+                    duration(values.getOrDefault("warmup", "10s")),
+                    duration(values.getOrDefault("duration", "30s")),
+                    Mix.parse(values.getOrDefault("mix", "GET:70,POST:15,PUT:10,DELETE:5")),
+                    Integer.parseInt(values.getOrDefault("seed-messages", "100")),
+                    List.of(values.getOrDefault("users", "client1,client2").split(",")),
+                    values.containsKey("target") ? URI.create(values.get("target")) : null,
+                    values.containsKey("histogram-dir") ? Path.of(values.get("histogram-dir")) : null,
+                    applicationArgs);
+        }
+
+        private static Duration duration(String value) {
+            return Duration.parse("PT" + value.toUpperCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.message_store.benchmark.load;
+
+import com.example.message_store.MessageStoreApplication;
+import com.example.message_store.config.VirtualThreadPinningMonitor;
+import com.example.message_store.util.JwtGenerator;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform threads vs virtual threads under a closed-loop load where half of the requests wait on
+ * a slow database (emulated by holding each pooled connection for {@code DB_LATENCY}) and the other
+ * half are served from the response cache without touching it.
+ * <p>
+ * Needs Java 21:
+ * <pre>
+ * ./mvnw -Pbenchmarks,virtual-threads test-compile exec:exec@threads
+ * </pre>
+ */
+public class VirtualThreadComparison {
+
+    private static final Duration DB_LATENCY = Duration.ofMillis(10);
+    private static final Duration WARMUP_TIME = Duration.ofSeconds(10);
+    private static final Duration RUN_TIME = Duration.ofSeconds(20);
+    private static final int CONCURRENT_CLIENTS = 64;
+    private static final String CACHED_MESSAGE_ID = "7aa44b54-c479-438b-8bfb-7d205f5357fc";
+
+    public static void main(String[] args) throws Exception {
+        if (Runtime.version().feature() < 21) {
+            System.err.println("Virtual threads need Java 21, running on " + Runtime.version());
+            System.exit(1);
+        }
+        System.out.println(run("platform", "--server.tomcat.threads.max=20"));
+        System.out.println(run("virtual", "--spring.profiles.active=virtual"));
+    }
+
+    private static String run(String mode, String modeArgument) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MessageStoreApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(new SlowDatabase()))
+                .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:load-" + mode,
+                        "--rate-limit.enabled=false", modeArgument)) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String token = JwtGenerator.generateToken("client1", "admin", "example.com", 60 * 60 * 1000);
+            HttpRequest databaseBound = request(port, "/api/v1/messages/?cursor=&size=20", token);
+            HttpRequest cached = request(port, "/api/v1/messages/" + CACHED_MESSAGE_ID, token);
+
+            HttpClient httpClient = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(16)).build();
+            List<Long> databaseLatencies = Collections.synchronizedList(new ArrayList<>());
+            List<Long> cachedLatencies = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger errors = new AtomicInteger();
+            long measureFrom = System.nanoTime() + WARMUP_TIME.toNanos();
+            long deadline = measureFrom + RUN_TIME.toNanos();
+            ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_CLIENTS);
+            for (int i = 0; i < CONCURRENT_CLIENTS; i++) {
+                boolean databaseClient = i % 2 == 0;
+                clients.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        boolean ok;
+                        try {
+                            ok = httpClient.send(databaseClient ? databaseBound : cached, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                        } catch (Exception e) {
+                            ok = false;
+                        }
+                        if (start < measureFrom) {
+                            continue;
+                        }
+                        if (ok) {
+                            (databaseClient ? databaseLatencies : cachedLatencies).add(System.nanoTime() - start);
+                        } else {
+                            errors.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(WARMUP_TIME.plus(RUN_TIME).toSeconds() + 30, TimeUnit.SECONDS);
+
+            long pinned = context.getBeansOfType(VirtualThreadPinningMonitor.class).values().stream()
+                    .mapToLong(VirtualThreadPinningMonitor::getPinnedEvents).sum();
+            return String.format("%-8s | db-bound: %s | cached: %s | errors: %d | pinned: %d",
+                    mode, summary(databaseLatencies), summary(cachedLatencies), errors.get(), pinned);
+        }
+    }
+
+    private static HttpRequest request(int port, String path, String token) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Authorization", "Bearer " + token)
+                .build();
+    }
+
+    private static String summary(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        if (sorted.isEmpty()) {
+            return "no requests completed";
+        }
+        return String.format("%6.0f req/s, p50 %6.1f ms, p99 %6.1f ms",
+                sorted.size() / (double) RUN_TIME.toSeconds(),
+                sorted.get(sorted.size() / 2) / 1e6,
+                sorted.get((int) (sorted.size() * 0.99)) / 1e6);
+    }
+
+    /**
+     * Emulates a remote database round trip by keeping every checked-out connection busy for a while.
+     */
+    private static final class SlowDatabase implements BeanPostProcessor {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource) {
+                return new DelegatingDataSource(dataSource) {
+                    @Override
+                    public Connection getConnection() throws SQLException {
+                        Connection connection = super.getConnection();
+                        try {
+                            Thread.sleep(DB_LATENCY.toMillis());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return connection;
+                    }
+                };
+            }
+            return bean;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.message_store.config;
+
+import com.example.message_store.exceptions.RateLimitExceededException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies {@link ClientRateLimiter} to authenticated requests, keyed by the JWT subject. Rejections
+ * go through the MVC exception resolvers, so the 429 carries the same {@code ApiError} body as
+ * errors raised by controllers.
+ */
+@AllArgsConstructor
+public class ClientRateLimitFilter extends OncePerRequestFilter {
+
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ClientRateLimiter rateLimiter;
+    private final HandlerExceptionResolver exceptionResolver;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            long waitNanos = rateLimiter.tryAcquire(auth.getName(), !READ_METHODS.contains(request.getMethod()));
+            if (waitNanos > 0) {
+                long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+                exceptionResolver.resolveException(request, response, null,
+                        new RateLimitExceededException("Rate limit exceeded, retry after " + retryAfterSeconds + "s", retryAfterSeconds));
+                return;
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.message_store.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-client token buckets with separate limits for reads and writes, implemented as the generic
+ * cell rate algorithm: a bucket is a single "theoretical arrival time" updated with a CAS loop, so
+ * admitting a request takes no lock and allocates nothing once the client is known.
+ * <p>
+ * Clients are kept in a size-bounded map; if more than {@code maxClients} are active at once, the
+ * least recently seen ones start over with a full bucket. Idle clients are dropped by a background
+ * sweep once both their buckets have refilled, when forgetting them is indistinguishable from
+ * keeping them. The sweep replaces per-access expiry, which cost several times the rest of
+ * {@link #tryAcquire}; a request racing the sweep may at worst get one token for free.
+ */
+public class ClientRateLimiter implements AutoCloseable {
+
+    private final Limit readLimit;
+    private final Limit writeLimit;
+    private final LongSupplier clock;
+    private final Cache<String, Buckets> clients;
+    private final ScheduledExecutorService sweeper;
+
+    public ClientRateLimiter(Limit readLimit, Limit writeLimit, long maxClients, Duration sweepInterval) {
+        this(readLimit, writeLimit, maxClients, System::nanoTime, sweepInterval);
+    }
+
+    ClientRateLimiter(Limit readLimit, Limit writeLimit, long maxClients, LongSupplier clock, Duration sweepInterval) {
+        this.readLimit = readLimit;
+        this.writeLimit = writeLimit;
+        this.clock = clock;
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .build();
+        if (sweepInterval.isZero()) {
+            this.sweeper = null;
+        } else {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "rate-limit-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = sweepInterval.toMillis();
+            this.sweeper.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a token from the client's read or write bucket. Returns 0 when the request is admitted,
+     * otherwise the nanoseconds until it would be; a rejected request takes nothing.
+     */
+    public long tryAcquire(String client, boolean write) {
+        Buckets buckets = clients.get(client, key -> new Buckets());
+        long now = clock.getAsLong();
+        return write ? writeLimit.tryAcquire(buckets.write, now) : readLimit.tryAcquire(buckets.read, now);
+    }
+
+    /**
+     * Forgets the clients whose read and write buckets are both full again.
+     */
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        clients.asMap().values().removeIf(buckets -> buckets.read.get() <= now && buckets.write.get() <= now);
+    }
+
+    public long getTrackedClients() {
+        return clients.estimatedSize();
+    }
+
+    /**
+     * Sustained rate plus the number of requests that may arrive at once after an idle period.
+     */
+    public record Limit(long intervalNanos, long toleranceNanos) {
+
+        public static Limit of(double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate limit needs a positive rate and a burst of at least 1");
+            }
+            long interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / perSecond));
+            return new Limit(interval, interval * burst);
+        }
+
+        long tryAcquire(AtomicLong arrival, long now) {
+            while (true) {
+                long current = arrival.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long wait = next - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private static final class Buckets {
+        private final AtomicLong read = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong write = new AtomicLong(Long.MIN_VALUE);
+    }
+}
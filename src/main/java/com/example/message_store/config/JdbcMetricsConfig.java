@@ -0,0 +1,50 @@
+package com.example.message_store.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Statement-level JDBC metrics through a datasource-proxy wrapper, replacing SQL and bind value
+ * logging. Disable with {@code jdbc.metrics.enabled=false}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jdbc.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class JdbcMetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor jdbcMetricsDataSourceProxy(ObjectProvider<MeterRegistry> meterRegistry,
+                                                               @Value("${jdbc.metrics.slow-query.threshold:100ms}") Duration slowQueryThreshold,
+                                                               @Value("${jdbc.metrics.slow-query.sample-rate:0.1}") double slowQuerySampleRate) {
+        JdbcMetricsListener listener = new JdbcMetricsListener(meterRegistry, slowQueryThreshold, slowQuerySampleRate);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(beanName, dataSource)
+                            .listener(listener)
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<JdbcRequestMetricsFilter> jdbcRequestMetricsFilter(MeterRegistry meterRegistry) {
+        FilterRegistrationBean<JdbcRequestMetricsFilter> registration = new FilterRegistrationBean<>(new JdbcRequestMetricsFilter(meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.message_store.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Times every JDBC statement execution ({@code jdbc.statements}, tagged by SQL verb) and adds it to
+ * the totals of the HTTP request running on the current thread, see {@link JdbcRequestMetricsFilter}.
+ * <p>
+ * Statements slower than the threshold are counted ({@code jdbc.statements.slow}) and a sample of
+ * them is logged with their SQL, without bind values.
+ */
+@Log4j2
+public class JdbcMetricsListener implements QueryExecutionListener {
+
+    private static final String START_NANOS = JdbcMetricsListener.class.getName() + ".startNanos";
+    private static final ThreadLocal<RequestStatements> CURRENT_REQUEST = new ThreadLocal<>();
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final long slowQueryThresholdNanos;
+    private final double slowQuerySampleRate;
+
+    public JdbcMetricsListener(ObjectProvider<MeterRegistry> meterRegistry, Duration slowQueryThreshold, double slowQuerySampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryThresholdNanos = slowQueryThreshold.toNanos();
+        this.slowQuerySampleRate = slowQuerySampleRate;
+    }
+
+    static RequestStatements beginRequest() {
+        RequestStatements statements = new RequestStatements();
+        CURRENT_REQUEST.set(statements);
+        return statements;
+    }
+
+    static void endRequest() {
+        CURRENT_REQUEST.remove();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Long startNanos = execInfo.getCustomValue(START_NANOS, Long.class);
+        if (startNanos == null) {
+            return;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        RequestStatements request = CURRENT_REQUEST.get();
+        if (request != null) {
+            request.add(elapsedNanos);
+        }
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Timer.builder("jdbc.statements")
+                    .description("JDBC statement executions; a batch counts as one")
+                    .tag("type", verb(queryInfoList))
+                    .tag("batch", Boolean.toString(execInfo.isBatch()))
+                    .tag("outcome", execInfo.isSuccess() ? "success" : "error")
+                    .register(registry)
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        if (elapsedNanos >= slowQueryThresholdNanos) {
+            if (registry != null) {
+                Counter.builder("jdbc.statements.slow")
+                        .description("JDBC statement executions slower than jdbc.metrics.slow-query.threshold")
+                        .register(registry)
+                        .increment();
+            }
+            if (ThreadLocalRandom.current().nextDouble() < slowQuerySampleRate) {
+                log.warn("Slow JDBC statement ({} ms{}): {}",
+                        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                        execInfo.isBatch() ? ", batch of " + execInfo.getBatchSize() : "",
+                        queryInfoList.stream().map(QueryInfo::getQuery).distinct().collect(Collectors.joining("; ")));
+            }
+        }
+    }
+
+    private static String verb(List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) {
+            return "other";
+        }
+        String query = queryInfoList.get(0).getQuery().stripLeading();
+        int end = 0;
+        while (end < query.length() && Character.isLetter(query.charAt(end))) {
+            end++;
+        }
+        String verb = query.substring(0, end).toLowerCase(Locale.ROOT);
+        return switch (verb) {
+            case "select", "insert", "update", "delete", "merge" -> verb;
+            default -> "other";
+        };
+    }
+
+    /**
+     * JDBC work of one HTTP request. Only touched by the thread serving the request.
+     */
+    static final class RequestStatements {
+        private int count;
+        private long nanos;
+
+        private void add(long elapsedNanos) {
+            count++;
+            nanos += elapsedNanos;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+    }
+}
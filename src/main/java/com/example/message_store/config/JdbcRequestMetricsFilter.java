@@ -0,0 +1,49 @@
+package com.example.message_store.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how many JDBC statements each request executed and how long they took in total, tagged
+ * like {@code http.server.requests} with the method and the matched URI pattern. Work done after
+ * the request thread returned (streamed responses) is not attributed to the request.
+ */
+@AllArgsConstructor
+public class JdbcRequestMetricsFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        JdbcMetricsListener.RequestStatements statements = JdbcMetricsListener.beginRequest();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            JdbcMetricsListener.endRequest();
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Tags tags = Tags.of("method", request.getMethod(), "uri", pattern == null ? "UNKNOWN" : pattern.toString());
+            DistributionSummary.builder("http.server.requests.jdbc.statements")
+                    .description("JDBC statements executed per request")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record(statements.getCount());
+            Timer.builder("http.server.requests.jdbc.time")
+                    .description("Time spent executing JDBC statements per request")
+                    .tags(tags)
+                    .register(meterRegistry)
+                    .record(statements.getNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.message_store.config;
+
+import com.example.message_store.service.MessageSearchIndex;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/searchindex} reports the index size, {@code POST} rebuilds it from the database
+ * and needs a token with role {@code admin}.
+ */
+@Component
+@Endpoint(id = "searchindex")
+@AllArgsConstructor
+public class MessageSearchIndexEndpoint {
+
+    private final MessageSearchIndex messageSearchIndex;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return Map.of(
+                "documents", messageSearchIndex.getDocumentCount(),
+                "rebuilding", messageSearchIndex.isRebuilding());
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        long start = System.nanoTime();
+        long indexed = messageSearchIndex.rebuild();
+        return Map.of(
+                "documents", indexed,
+                "tookMillis", (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.message_store.config;
+
+import com.example.message_store.repository.shard.MessageShards;
+import com.example.message_store.repository.shard.ShardRebalancer;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/shards} reports the messages on each shard, {@code POST} moves misplaced
+ * messages to their shards and needs a token with role {@code admin}.
+ */
+@Component
+@Profile("sharded")
+@Endpoint(id = "shards")
+@AllArgsConstructor
+public class MessageShardsEndpoint {
+
+    private final MessageShards messageShards;
+    private final ShardRebalancer shardRebalancer;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return Map.of(
+                "count", messageShards.getCount(),
+                "messages", shardRebalancer.countByShard());
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebalance() {
+        long start = System.nanoTime();
+        long moved = shardRebalancer.rebalance();
+        return Map.of(
+                "moved", moved,
+                "tookMillis", (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.message_store.config;
+
+import com.example.message_store.repository.shard.MessageShards;
+import com.example.message_store.repository.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits messages across {@code message.shards.count} databases ({@code sharded} profile). Each
+ * shard gets its own connection pool, opened from {@code message.shards.url-pattern} with the
+ * shard number; the credentials come from {@code spring.datasource.*}. JPA runs on a single
+ * routing datasource over all of them.
+ * <p>
+ * To change the shard count, restart with the new {@code count} and, when shrinking, the old one
+ * as {@code previous-count} so that the surplus shards are opened and drained on startup.
+ */
+@Configuration
+@Profile("sharded")
+public class ShardingConfig {
+
+    @Bean(destroyMethod = "close")
+    public MessageShards messageShards(DataSourceProperties properties,
+                                       @Value("${message.shards.url-pattern}") String urlPattern,
+                                       @Value("${message.shards.count:4}") int count,
+                                       @Value("${message.shards.previous-count:0}") int previousCount) {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int shard = 0; shard < Math.max(count, previousCount); shard++) {
+            HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urlPattern.formatted(shard))
+                    .build();
+            dataSource.setPoolName("shard-" + shard);
+            dataSources.add(dataSource);
+        }
+        return new MessageShards(dataSources, count);
+    }
+
+    @Bean
+    public DataSource dataSource(MessageShards messageShards) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(messageShards));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.message_store.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Support beans for serving requests on virtual threads ({@code spring.threads.virtual.enabled},
+ * see the {@code virtual} profile).
+ */
+@Configuration
+public class VirtualThreadConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "datasource.bulkhead.enabled", havingValue = "true")
+    public static BeanPostProcessor dataSourceBulkhead(@Value("${datasource.bulkhead.max-concurrent:10}") int maxConcurrent,
+                                                       @Value("${datasource.bulkhead.acquire-timeout:30s}") Duration acquireTimeout) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+                    return new BulkheadDataSource(dataSource, maxConcurrent, acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "virtual-threads.pinning-monitor.enabled", havingValue = "true")
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(@Value("${virtual-threads.pinning-monitor.threshold:20ms}") Duration threshold) {
+        return new VirtualThreadPinningMonitor(threshold);
+    }
+}
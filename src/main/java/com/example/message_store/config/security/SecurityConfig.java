@@ -1,15 +1,24 @@
 package com.example.message_store.config.security;
 
+import com.example.message_store.config.ClientRateLimitFilter;
+import com.example.message_store.config.ClientRateLimiter;
 import com.example.message_store.config.JwtAuthenticationFilter;
 import com.example.message_store.util.JwtUtil;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.time.Duration;
 
 @Configuration
 @EnableMethodSecurity
@@ -19,14 +28,36 @@ public class SecurityConfig {
     private JwtUtil jwtUtil;
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public ClientRateLimiter clientRateLimiter(@Value("${rate-limit.read.per-second:200}") double readPerSecond,
+                                               @Value("${rate-limit.read.burst:400}") int readBurst,
+                                               @Value("${rate-limit.write.per-second:50}") double writePerSecond,
+                                               @Value("${rate-limit.write.burst:100}") int writeBurst,
+                                               @Value("${rate-limit.max-clients:100000}") long maxClients,
+                                               @Value("${rate-limit.idle-sweep-interval:1m}") Duration idleSweepInterval) {
+        return new ClientRateLimiter(ClientRateLimiter.Limit.of(readPerSecond, readBurst),
+                ClientRateLimiter.Limit.of(writePerSecond, writeBurst), maxClients, idleSweepInterval);
+    }
+
+    @Bean
+    public SecurityFilterChain filterChain(HttpSecurity http, ClientRateLimiter clientRateLimiter,
+                                           @Value("${rate-limit.enabled:true}") boolean rateLimitEnabled,
+                                           @Qualifier("handlerExceptionResolver") HandlerExceptionResolver exceptionResolver) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
+                        // Completing a streamed response re-dispatches a request that was authorized already
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                        // Rebuilding the search index and rebalancing the shards reread every message
+                        .requestMatchers(HttpMethod.POST, "/actuator/searchindex", "/actuator/shards").hasRole("ADMIN")
+                        .requestMatchers("/actuator/**").authenticated()
                         .requestMatchers("/api/v1/messages/**").authenticated()
                 )
                 .addFilterBefore(new JwtAuthenticationFilter(jwtUtil), UsernamePasswordAuthenticationFilter.class);
+        if (rateLimitEnabled) {
+            http.addFilterAfter(new ClientRateLimitFilter(clientRateLimiter, exceptionResolver), JwtAuthenticationFilter.class);
+        }
 
         return http.build();
     }
@@ -1,23 +1,55 @@
 package com.example.message_store.controller;
 
 
+import com.example.message_store.config.BinaryEncodingConfig;
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageBatchItemResult;
+import com.example.message_store.dto.MessageBatchResponse;
+import com.example.message_store.dto.MessageContent;
 import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.dto.MessageExportRecord;
+import com.example.message_store.dto.MessageListItem;
 import com.example.message_store.dto.MessageResponse;
 import com.example.message_store.dto.MessageResponseWithId;
+import com.example.message_store.dto.MessageSearchHit;
+import com.example.message_store.dto.MessageStatsResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.exceptions.BatchTooLargeException;
+import com.example.message_store.exceptions.InvalidSearchQueryException;
 import com.example.message_store.model.Client;
 import com.example.message_store.model.Message;
 import com.example.message_store.service.ClientService;
+import com.example.message_store.service.MessageFeed;
+import com.example.message_store.service.MessageInsertCoalescer;
 import com.example.message_store.service.MessageService;
+import com.example.message_store.util.CursorCodec;
+import com.example.message_store.util.VersionETag;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.AllArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -25,42 +57,184 @@ import java.util.UUID;
 @AllArgsConstructor
 public class MessageController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_STATS_CLIENTS = 1000;
+    private static final String NDJSON = "application/x-ndjson";
+
     private final MessageService messageService;
     private final ClientService clientService;
+    private final MessageInsertCoalescer messageInsertCoalescer;
+    private final MessageFeed messageFeed;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * A matching {@code If-None-Match} is answered with 304 after looking up only the version.
+     */
     @GetMapping("{id}")
-    public ResponseEntity<MessageResponse> getById(@PathVariable UUID id, Authentication auth) {
-        Message message = messageService.getById(id);
-        return ResponseEntity.ok(MessageResponse.from(message));
+    public ResponseEntity<MessageResponse> getById(@PathVariable UUID id, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(VersionETag.of(messageService.getVersion(id)))) {
+            return null;
+        }
+        VersionedMessageResponse response = messageService.getResponseById(id);
+        return ResponseEntity.ok().eTag(VersionETag.of(response.version())).body(response.response());
     }
 
     @GetMapping
     public ResponseEntity<Page<MessageResponse>> getAll(Pageable pageable) {
-        Page<Message> messages = messageService.getAll(pageable);
-        Page<MessageResponse> response = messages.map(MessageResponse::from);
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(messageService.getAll(pageable));
+    }
+
+    @GetMapping(params = "cursor")
+    public ResponseEntity<CursorPageResponse<MessageResponse>> getAllByCursor(@RequestParam String cursor,
+                                                                              @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        UUID after = cursor.isEmpty() ? null : CursorCodec.decodeUuid(cursor);
+        Slice<MessageContent> messages = messageService.getAfter(after, pageSize);
+        List<MessageContent> content = messages.getContent();
+        String nextCursor = messages.hasNext() ? CursorCodec.encode(content.get(content.size() - 1).uuid()) : null;
+        return ResponseEntity.ok(new CursorPageResponse<>(
+                content.stream().map(message -> new MessageResponse(message.content())).toList(),
+                content.size(),
+                messages.hasNext(),
+                nextCursor));
+    }
+
+    @GetMapping("mine")
+    public ResponseEntity<CursorPageResponse<MessageListItem>> getMine(@RequestParam(defaultValue = "") String cursor,
+                                                                       @RequestParam(defaultValue = "20") int size,
+                                                                       Authentication auth) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        CursorCodec.TimedPosition after = cursor.isEmpty() ? null : CursorCodec.decodeTimed(cursor);
+        Client client = clientService.getClientReference(auth.getName());
+        Slice<MessageListItem> messages = client == null
+                ? new SliceImpl<>(List.of())
+                : messageService.getRecentByClient(client.getUuid(), after, pageSize);
+        List<MessageListItem> content = messages.getContent();
+        MessageListItem last = content.isEmpty() ? null : content.get(content.size() - 1);
+        String nextCursor = messages.hasNext() ? CursorCodec.encode(last.createdAt(), last.uuid()) : null;
+        return ResponseEntity.ok(new CursorPageResponse<>(content, content.size(), messages.hasNext(), nextCursor));
+    }
+
+    /**
+     * Total and per-client message counts from the maintained counters, without counting rows.
+     */
+    @GetMapping("stats")
+    public ResponseEntity<MessageStatsResponse> getStats(@RequestParam(defaultValue = "100") int clients) {
+        return ResponseEntity.ok(messageService.getStats(Math.min(Math.max(clients, 0), MAX_STATS_CLIENTS)));
+    }
+
+    @GetMapping("search")
+    public ResponseEntity<CursorPageResponse<MessageSearchHit>> search(@RequestParam String q,
+                                                                       @RequestParam(defaultValue = "") String cursor,
+                                                                       @RequestParam(defaultValue = "20") int size) {
+        if (q.isBlank()) {
+            throw new InvalidSearchQueryException("Search query must not be empty");
+        }
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        CursorCodec.RankedPosition after = cursor.isEmpty() ? null : CursorCodec.decodeRanked(cursor);
+        return ResponseEntity.ok(messageService.search(q, after, pageSize));
     }
 
-    @PostMapping(consumes = "application/json")
+    @GetMapping(value = "export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String client) {
+        ObjectWriter writer = objectMapper.writerFor(MessageExportRecord.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                messageService.export(client, message -> {
+                    try {
+                        writer.writeValue(generator, MessageExportRecord.from(message));
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Server-Sent Events of created, updated and deleted messages from now on, or after the
+     * {@code Last-Event-ID} a reconnecting client sends.
+     */
+    @GetMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return messageFeed.subscribe(lastEventId);
+    }
+
+    @PostMapping(consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, BinaryEncodingConfig.SMILE})
     public ResponseEntity<MessageResponseWithId> createMessage(@RequestBody @Valid MessageCreateRequest messageDTO, Authentication auth) {
-        Client client = clientService.getClientByUsername(auth.getName());
-        Message createdMessage = messageService.save(messageDTO, client);
+        Client client = clientService.getClientReference(auth.getName());
+        MessageCreateRequest request = messageDTO.withDefaultTtl(clientService.getMessageTtlSeconds(auth.getName()));
+        Message createdMessage = messageInsertCoalescer.save(request, client);
         URI location = URI.create("/api/v1/messages/" + createdMessage.getUuid());
         return ResponseEntity.created(location).body(MessageResponseWithId.from(createdMessage));
     }
 
-    @PutMapping(value = "{id}", consumes = "application/json")
-    @PreAuthorize("@messageSecurity.isAuthorizedToManageMessage(#id, authentication)")
-    public ResponseEntity<MessageResponse> updateMessage(@PathVariable UUID id, @RequestBody @Valid MessageCreateRequest messageDTO, Authentication authentication) {
-        Message updatedMessage = messageService.update(id, messageDTO);
-        return ResponseEntity.ok(MessageResponse.from(updatedMessage));
+    @PostMapping(value = "batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, BinaryEncodingConfig.SMILE})
+    public ResponseEntity<MessageBatchResponse> createMessages(@RequestBody List<MessageCreateRequest> messageDTOs, Authentication auth) {
+        if (messageDTOs.size() > MAX_BATCH_SIZE) {
+            throw new BatchTooLargeException("Batch contains " + messageDTOs.size() + " messages, the maximum is " + MAX_BATCH_SIZE);
+        }
+        MessageBatchItemResult[] results = new MessageBatchItemResult[messageDTOs.size()];
+        List<MessageCreateRequest> accepted = new ArrayList<>();
+        List<Integer> acceptedIndexes = new ArrayList<>();
+        for (int i = 0; i < messageDTOs.size(); i++) {
+            List<String> errors = validate(messageDTOs.get(i));
+            if (errors.isEmpty()) {
+                accepted.add(messageDTOs.get(i));
+                acceptedIndexes.add(i);
+            } else {
+                results[i] = MessageBatchItemResult.rejected(i, errors);
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            Client client = clientService.getClientReference(auth.getName());
+            Long defaultTtlSeconds = clientService.getMessageTtlSeconds(auth.getName());
+            List<Message> createdMessages = messageService.saveAll(accepted.stream()
+                    .map(messageDTO -> messageDTO.withDefaultTtl(defaultTtlSeconds))
+                    .toList(), client);
+            for (int i = 0; i < createdMessages.size(); i++) {
+                int index = acceptedIndexes.get(i);
+                results[index] = MessageBatchItemResult.created(index, createdMessages.get(i).getUuid());
+            }
+        }
+        return ResponseEntity.ok(new MessageBatchResponse(accepted.size(), results.length - accepted.size(), List.of(results)));
+    }
+
+    /**
+     * With {@code If-Match} the update only applies to the version the client last saw, otherwise
+     * 412. The response carries the ETag of the new version.
+     */
+    @PutMapping(value = "{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, BinaryEncodingConfig.SMILE})
+    public ResponseEntity<MessageResponse> updateMessage(@PathVariable UUID id, @RequestBody @Valid MessageCreateRequest messageDTO,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                         Authentication authentication) {
+        Long expectedVersion = ifMatch == null ? null : VersionETag.parseIfMatch(ifMatch);
+        long version = messageService.update(id, messageDTO, authentication.getName(), expectedVersion);
+        return ResponseEntity.ok()
+                .eTag(VersionETag.of(version))
+                .body(new MessageResponse(messageDTO.content()));
     }
 
     @DeleteMapping("{id}")
-    @PreAuthorize("@messageSecurity.isAuthorizedToManageMessage(#id, authentication)")
     public ResponseEntity<Void> deleteMessage(@PathVariable UUID id, Authentication authentication) {
-        messageService.deleteById(id);
+        messageService.deleteById(id, authentication.getName());
         return ResponseEntity.noContent().build();
     }
 
+    private List<String> validate(MessageCreateRequest messageDTO) {
+        if (messageDTO == null) {
+            return List.of("Message must not be null");
+        }
+        return validator.validate(messageDTO).stream()
+                .map(ConstraintViolation::getMessage)
+                .toList();
+    }
+
 }
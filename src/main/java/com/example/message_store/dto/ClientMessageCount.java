@@ -0,0 +1,9 @@
+package com.example.message_store.dto;
+
+import java.util.UUID;
+
+public record ClientMessageCount(
+        UUID clientId,
+        long count
+) {
+}
@@ -0,0 +1,21 @@
+package com.example.message_store.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.UUID;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MessageBatchItemResult(
+        int index,
+        UUID uuid,
+        List<String> errors
+) {
+    public static MessageBatchItemResult created(int index, UUID uuid) {
+        return new MessageBatchItemResult(index, uuid, null);
+    }
+
+    public static MessageBatchItemResult rejected(int index, List<String> errors) {
+        return new MessageBatchItemResult(index, null, errors);
+    }
+}
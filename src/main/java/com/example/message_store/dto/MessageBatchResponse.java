@@ -0,0 +1,10 @@
+package com.example.message_store.dto;
+
+import java.util.List;
+
+public record MessageBatchResponse(
+        int created,
+        int rejected,
+        List<MessageBatchItemResult> results
+) {
+}
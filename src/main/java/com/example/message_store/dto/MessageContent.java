@@ -0,0 +1,20 @@
+package com.example.message_store.dto;
+
+import com.example.message_store.util.DeflateCodec;
+
+import java.util.UUID;
+
+/**
+ * Id and content of a message, read without loading the entity.
+ */
+public record MessageContent(
+        UUID uuid,
+        String content
+) {
+    /**
+     * From the two content columns of a message, of which one is null.
+     */
+    public MessageContent(UUID uuid, String content, byte[] contentDeflated) {
+        this(uuid, DeflateCodec.plainOrInflated(content, contentDeflated));
+    }
+}
@@ -1,8 +1,40 @@
 package com.example.message_store.dto;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 
+import java.time.Instant;
+
+/**
+ * {@code ttlSeconds} only applies when a message is created; updates keep the original expiry. It
+ * is capped at {@link #MAX_TTL_SECONDS}, ten years, so that the expiry stays a valid timestamp.
+ */
 public record MessageCreateRequest(
         @NotBlank(message = "Content must not be empty")
-        String content
-){}
\ No newline at end of file
+        String content,
+        @Positive(message = "TTL must be positive")
+        @Max(value = MessageCreateRequest.MAX_TTL_SECONDS, message = "TTL must be at most " + MessageCreateRequest.MAX_TTL_SECONDS + " seconds")
+        Long ttlSeconds
+){
+    public static final long MAX_TTL_SECONDS = 315_360_000;
+
+    public MessageCreateRequest(String content) {
+        this(content, null);
+    }
+
+    /**
+     * This request, with {@code defaultTtlSeconds} when it sets no TTL of its own. A missing or
+     * non-positive default means the client's messages don't expire; a larger one than
+     * {@link #MAX_TTL_SECONDS} is capped at it.
+     */
+    public MessageCreateRequest withDefaultTtl(Long defaultTtlSeconds) {
+        return ttlSeconds != null || defaultTtlSeconds == null || defaultTtlSeconds <= 0
+                ? this
+                : new MessageCreateRequest(content, Math.min(defaultTtlSeconds, MAX_TTL_SECONDS));
+    }
+
+    public Instant expiresAt(Instant now) {
+        return ttlSeconds == null ? null : now.plusSeconds(ttlSeconds);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.message_store.dto;
+
+import com.example.message_store.model.Message;
+
+import java.util.UUID;
+
+public record MessageExportRecord(
+        UUID uuid,
+        String client,
+        String content
+) {
+    public static MessageExportRecord from(Message message) {
+        String client = message.getClient() == null ? null : message.getClient().getUsername();
+        return new MessageExportRecord(message.getUuid(), client, message.getContent());
+    }
+}
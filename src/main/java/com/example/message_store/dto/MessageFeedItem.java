@@ -0,0 +1,12 @@
+package com.example.message_store.dto;
+
+import java.util.UUID;
+
+/**
+ * Data of a live feed event; {@code content} is null for deletions.
+ */
+public record MessageFeedItem(
+        UUID uuid,
+        String content
+) {
+}
@@ -0,0 +1,12 @@
+package com.example.message_store.dto;
+
+import java.util.UUID;
+
+/**
+ * A message id with its owner.
+ */
+public record MessageKey(
+        UUID uuid,
+        UUID clientId
+) {
+}
@@ -0,0 +1,22 @@
+package com.example.message_store.dto;
+
+import com.example.message_store.util.DeflateCodec;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A message in a client's own, newest-first listing.
+ */
+public record MessageListItem(
+        UUID uuid,
+        String content,
+        Instant createdAt
+) {
+    /**
+     * From the columns of a message, for constructor expressions.
+     */
+    public MessageListItem(UUID uuid, String content, byte[] contentDeflated, Instant createdAt) {
+        this(uuid, DeflateCodec.plainOrInflated(content, contentDeflated), createdAt);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.message_store.dto;
 
 import com.example.message_store.model.Message;
+import com.example.message_store.util.DeflateCodec;
 import jakarta.validation.constraints.NotBlank;
 
 import java.util.Objects;
@@ -10,6 +11,13 @@ public record MessageResponse(
         @NotBlank(message = "Content must not be empty")
         String content
 ) {
+    /**
+     * From the two content columns of a message, for constructor expressions.
+     */
+    public MessageResponse(String content, byte[] contentDeflated) {
+        this(DeflateCodec.plainOrInflated(content, contentDeflated));
+    }
+
     public static MessageResponse from(Message message) {
         Objects.requireNonNull(message, "Message must not be null");
         return new MessageResponse(message.getContent());
@@ -0,0 +1,10 @@
+package com.example.message_store.dto;
+
+import java.util.UUID;
+
+public record MessageSearchHit(
+        UUID uuid,
+        String content,
+        float score
+) {
+}
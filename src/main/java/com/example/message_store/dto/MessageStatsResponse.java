@@ -0,0 +1,12 @@
+package com.example.message_store.dto;
+
+import java.util.List;
+
+/**
+ * Message counts from the maintained counters, largest clients first.
+ */
+public record MessageStatsResponse(
+        long total,
+        List<ClientMessageCount> clients
+) {
+}
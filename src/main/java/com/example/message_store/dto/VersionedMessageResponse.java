@@ -0,0 +1,35 @@
+package com.example.message_store.dto;
+
+import com.example.message_store.model.Message;
+
+import java.time.Instant;
+
+/**
+ * A single-message response together with the version it was built from, so the ETag always
+ * describes the body it is sent with. The expiry lets a cached response be dropped the moment
+ * its message expires.
+ */
+public record VersionedMessageResponse(
+        MessageResponse response,
+        long version,
+        Instant expiresAt
+) {
+    public VersionedMessageResponse(MessageResponse response, long version) {
+        this(response, version, null);
+    }
+
+    /**
+     * From the columns of a message, for constructor expressions.
+     */
+    public VersionedMessageResponse(String content, byte[] contentDeflated, Long version, Instant expiresAt) {
+        this(new MessageResponse(content, contentDeflated), version, expiresAt);
+    }
+
+    public static VersionedMessageResponse from(Message message) {
+        return new VersionedMessageResponse(MessageResponse.from(message), message.getVersion(), message.getExpiresAt());
+    }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.message_store.exceptions;
+
+public class BatchTooLargeException extends RuntimeException {
+    public BatchTooLargeException(String message) {
+        super(message);
+    }
+}
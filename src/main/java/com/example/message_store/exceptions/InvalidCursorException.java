@@ -0,0 +1,7 @@
+package com.example.message_store.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.message_store.exceptions;
+
+public class InvalidSearchQueryException extends RuntimeException {
+    public InvalidSearchQueryException(String message) {
+        super(message);
+    }
+}
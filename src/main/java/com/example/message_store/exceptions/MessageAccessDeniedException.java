@@ -0,0 +1,7 @@
+package com.example.message_store.exceptions;
+
+public class MessageAccessDeniedException extends RuntimeException {
+    public MessageAccessDeniedException(String message) {
+        super(message);
+    }
+}
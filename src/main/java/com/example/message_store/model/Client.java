@@ -1,5 +1,6 @@
 package com.example.message_store.model;
 
+import com.example.message_store.service.ClientChangeListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -14,10 +15,21 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Table(name = "Clients")
+@EntityListeners(ClientChangeListener.class)
 public class Client {
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedUuid
     private UUID uuid;
     @Column(unique = true)
     private String username;
+    /**
+     * Lifetime of this client's messages when a create request sets none; null keeps them forever.
+     */
+    @Column(name = "message_ttl_seconds")
+    private Long messageTtlSeconds;
+
+    public Client(UUID uuid, String username) {
+        this.uuid = uuid;
+        this.username = username;
+    }
 }
@@ -1,33 +1,125 @@
 package com.example.message_store.model;
 
+import com.example.message_store.util.DeflateCodec;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
 
+import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * The {@code (client_id, created_at, uuid)} index serves the newest-first listing of one client's
+ * messages; the id breaks ties between messages created in the same microsecond. The
+ * {@code expires_at} index lets the expiry sweeper find expired messages without a table scan.
+ */
 @Entity
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Table(name = "Messages")
-
+@Table(name = "Messages", indexes = {
+        @Index(name = "idx_messages_client_created", columnList = "client_id, created_at DESC, uuid DESC"),
+        @Index(name = "idx_messages_expires_at", columnList = "expires_at")
+})
 public class Message {
+    public static final int MAX_CONTENT_LENGTH = 1_000_000;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedUuid
     private UUID uuid;
-    @Column(nullable = false)
+    /**
+     * Null when the content is stored in {@link #contentDeflated} instead.
+     */
+    @Column(length = MAX_CONTENT_LENGTH)
     private String content;
+    /**
+     * Content above the compression threshold, deflated. Only inflated when {@link #getContent()}
+     * is called, so loading a message does not materialize its text.
+     */
+    @Column(name = "content_deflated", length = MAX_CONTENT_LENGTH)
+    @ToString.Exclude
+    private byte[] contentDeflated;
+    /**
+     * The last inflated {@link #contentDeflated}, so that repeated reads (sorting, equals) inflate
+     * once. Final and initialized, so it stays out of the constructors and the builder.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final AtomicReference<Inflated> inflated = new AtomicReference<>();
 
-    @ManyToOne
+    /**
+     * Lazy: read endpoints project into DTOs and never need the client, exports fetch it explicitly.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "client_id")
+    @ToString.Exclude
     private Client client;
 
+    @CreationTimestamp
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    /**
+     * Null for messages that never expire. Expired messages are hidden from reads at once and
+     * deleted later by {@code MessageExpirySweeper}.
+     */
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    /**
+     * Incremented by every update; exposed as the ETag of the message.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
     public Message(String content, Client client) {
         this.content = content;
         this.client = client;
     }
+
+    public Message(String content, Client client, Instant expiresAt) {
+        this.content = content;
+        this.client = client;
+        this.expiresAt = expiresAt;
+    }
+
+    public Message(UUID uuid, String content, Client client) {
+        this.uuid = uuid;
+        this.content = content;
+        this.client = client;
+    }
+
+    public String getContent() {
+        if (content != null || contentDeflated == null) {
+            return content;
+        }
+        Inflated last = inflated.get();
+        if (last == null || last.from() != contentDeflated) {
+            last = new Inflated(contentDeflated, DeflateCodec.inflate(contentDeflated));
+            inflated.set(last);
+        }
+        return last.content();
+    }
+
+    public boolean isCompressed() {
+        return content == null && contentDeflated != null;
+    }
+
+    private record Inflated(byte[] from, String content) {
+    }
 }
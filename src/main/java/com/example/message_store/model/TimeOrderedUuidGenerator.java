@@ -0,0 +1,87 @@
+package com.example.message_store.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates version 7 UUIDs (RFC 9562): a 48-bit Unix millisecond timestamp followed by a 12-bit
+ * sequence and 62 random bits. Ids generated by this JVM are strictly increasing, so new rows are
+ * appended to the right-hand edge of the primary-key index instead of landing on random pages.
+ * <p>
+ * {@link #generate(int)} issues version 8 ids with the same layout whose first 16 random bits are
+ * a shard bucket, so the shard of a message can be told from its id alone.
+ * <p>
+ * Plugged into entities with {@link TimeOrderedUuid}; an id assigned before persisting is kept.
+ */
+public class TimeOrderedUuidGenerator implements BeforeExecutionGenerator {
+
+    public static final int SHARD_BUCKETS = 1 << 16;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int BUCKET_SHIFT = 46;
+    private static final long RANDOM_MASK = (1L << BUCKET_SHIFT) - 1;
+
+    /**
+     * Last issued {@code timestamp << 12 | sequence}. Shared by all instances so that ids stay
+     * monotonic across entity types; when the sequence overflows within one millisecond the
+     * timestamp is borrowed from the next one.
+     */
+    private static final AtomicLong LAST_TIMESTAMP_AND_SEQUENCE = new AtomicLong();
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return currentValue != null ? currentValue : generate();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    @Override
+    public boolean allowAssignedIdentifiers() {
+        return true;
+    }
+
+    public static UUID generate() {
+        long leastSigBits = ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(nextMostSigBits(0x7000L), leastSigBits);
+    }
+
+    /**
+     * A version 8 id ordered like {@link #generate()} that carries {@code shardBucket}.
+     */
+    public static UUID generate(int shardBucket) {
+        if (shardBucket < 0 || shardBucket >= SHARD_BUCKETS) {
+            throw new IllegalArgumentException("Shard bucket out of range: " + shardBucket);
+        }
+        long leastSigBits = 0x8000000000000000L
+                | (long) shardBucket << BUCKET_SHIFT
+                | ThreadLocalRandom.current().nextLong() & RANDOM_MASK;
+        return new UUID(nextMostSigBits(0x8000L), leastSigBits);
+    }
+
+    /**
+     * The bucket given to {@link #generate(int)}, or -1 for any other id.
+     */
+    public static int shardBucket(UUID id) {
+        if (id.version() != 8 || id.variant() != 2) {
+            return -1;
+        }
+        return (int) (id.getLeastSignificantBits() >>> BUCKET_SHIFT) & (SHARD_BUCKETS - 1);
+    }
+
+    private static long nextMostSigBits(long version) {
+        long candidate = System.currentTimeMillis() << SEQUENCE_BITS;
+        long timestampAndSequence = LAST_TIMESTAMP_AND_SEQUENCE.updateAndGet(last -> candidate > last ? candidate : last + 1);
+        return (timestampAndSequence >>> SEQUENCE_BITS) << 16
+                | version
+                | (timestampAndSequence & 0x0FFFL);
+    }
+}
@@ -1,12 +1,12 @@
 package com.example.message_store.repository;
 
 import com.example.message_store.model.Client;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.UUID;
 
 @Repository
-public interface ClientRepository extends CrudRepository<Client, UUID> {
+public interface ClientRepository extends JpaRepository<Client, UUID> {
     Client findByUsername(String username);
 }
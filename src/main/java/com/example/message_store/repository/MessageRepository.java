@@ -1,14 +1,241 @@
 package com.example.message_store.repository;
 
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
 import com.example.message_store.model.Message;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.JpaSort;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+public interface MessageRepository extends JpaRepository<Message, UUID>, MessageStore {
+
+    Instant LATEST = Instant.parse("9999-12-31T23:59:59.999999Z");
+    UUID FIRST_ID = new UUID(0, 0);
+    UUID LAST_ID = new UUID(-1, -1);
+    String NOT_EXPIRED = "(m.expiresAt is null or m.expiresAt > current_timestamp)";
+    /**
+     * The text of a message whether stored plain or deflated; {@code MESSAGE_CONTENT} is created in
+     * {@code data.sql} as an alias of {@link com.example.message_store.util.DeflateCodec#plainOrInflated}.
+     */
+    String CONTENT_TEXT = "function('MESSAGE_CONTENT', m.content, m.contentDeflated)";
 
-public interface MessageRepository extends JpaRepository<Message, UUID> {
     @Override
     @EntityGraph(attributePaths = {"client"})
     List<Message> findAll();
+
+    // Declared by both JpaRepository and MessageStore; redeclared so calls are not ambiguous.
+    @Override
+    default Page<Message> findAll(Pageable pageable) {
+        return findAllSorted(withContentSort(pageable));
+    }
+
+    @Query(value = "select m from Message m where " + NOT_EXPIRED, countQuery = "select count(m) from Message m where " + NOT_EXPIRED)
+    Page<Message> findAllSorted(Pageable pageable);
+
+    @Override
+    @Query("select m from Message m left join fetch m.client where m.uuid = :id and " + NOT_EXPIRED)
+    Optional<Message> findById(@Param("id") UUID id);
+
+    @Override
+    @Query("select count(m) > 0 from Message m where m.uuid = :id and " + NOT_EXPIRED)
+    boolean existsById(@Param("id") UUID id);
+
+    @Override
+    @Query("select count(m) from Message m where " + NOT_EXPIRED)
+    long count();
+
+    @Query("select new com.example.message_store.dto.ClientMessageCount(m.client.uuid, count(m)) from Message m " +
+            "group by m.client.uuid")
+    List<ClientMessageCount> countByClient();
+
+    @Override
+    @Query("select min(m.expiresAt) from Message m")
+    Instant findEarliestExpiry();
+
+    @Override
+    <S extends Message> S save(S message);
+
+    @Override
+    <S extends Message> List<S> saveAll(Iterable<S> messages);
+
+    @Override
+    default Page<MessageResponse> findAllResponses(Pageable pageable) {
+        return findAllResponsesSorted(withContentSort(pageable));
+    }
+
+    @Query(value = "select new com.example.message_store.dto.MessageResponse(m.content, m.contentDeflated) from Message m " +
+            "where " + NOT_EXPIRED,
+            countQuery = "select count(m) from Message m where " + NOT_EXPIRED)
+    Page<MessageResponse> findAllResponsesSorted(Pageable pageable);
+
+    @Override
+    default List<MessageResponse> findResponses(Pageable pageable) {
+        return findResponsesSorted(withContentSort(pageable));
+    }
+
+    @Query("select new com.example.message_store.dto.MessageResponse(m.content, m.contentDeflated) from Message m " +
+            "where " + NOT_EXPIRED)
+    List<MessageResponse> findResponsesSorted(Pageable pageable);
+
+    @Query("select new com.example.message_store.dto.MessageContent(m.uuid, m.content, m.contentDeflated) from Message m " +
+            "where " + NOT_EXPIRED + " order by m.uuid")
+    Slice<MessageContent> findContentByOrderByUuidAsc(Pageable pageable);
+
+    @Query("select new com.example.message_store.dto.MessageContent(m.uuid, m.content, m.contentDeflated) from Message m " +
+            "where m.uuid > :after and " + NOT_EXPIRED + " order by m.uuid")
+    Slice<MessageContent> findContentByUuidGreaterThanOrderByUuidAsc(@Param("after") UUID after, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select m from Message m left join fetch m.client where " + NOT_EXPIRED + " order by m.uuid")
+    Stream<Message> streamAll();
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select m from Message m join fetch m.client c where c.username = :username and " + NOT_EXPIRED + " order by m.uuid")
+    Stream<Message> streamAllByClientUsername(@Param("username") String username);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE))
+    @Query("select new com.example.message_store.dto.MessageContent(m.uuid, m.content, m.contentDeflated) from Message m where " + NOT_EXPIRED)
+    Stream<MessageContent> streamAllContent();
+
+    /**
+     * Keyset page of {@link #streamAll()}, starting after {@link #FIRST_ID} for the first one.
+     */
+    @Query("select m from Message m left join fetch m.client where m.uuid > :after and " + NOT_EXPIRED + " order by m.uuid")
+    List<Message> findAllAfter(@Param("after") UUID after, Pageable pageable);
+
+    /**
+     * Keyset page of {@link #streamAllByClientUsername(String)}.
+     */
+    @Query("select m from Message m join fetch m.client c where c.username = :username and m.uuid > :after and " + NOT_EXPIRED + " " +
+            "order by m.uuid")
+    List<Message> findAllByClientUsernameAfter(@Param("username") String username, @Param("after") UUID after, Pageable pageable);
+
+    @Query("select new com.example.message_store.dto.MessageContent(m.uuid, m.content, m.contentDeflated) from Message m " +
+            "where m.uuid = :id and " + NOT_EXPIRED)
+    Optional<MessageContent> findContentById(@Param("id") UUID id);
+
+    @Query("select new com.example.message_store.dto.MessageContent(m.uuid, m.content, m.contentDeflated) from Message m " +
+            "where m.uuid in :ids and " + NOT_EXPIRED)
+    List<MessageContent> findContentByIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Starts below the latest representable position: H2 only walks the composite index in order,
+     * instead of sorting the client's rows, when created_at is bounded.
+     */
+    @Override
+    default Slice<MessageListItem> findRecentByClientId(UUID clientId, Pageable pageable) {
+        return findRecentByClientIdBefore(clientId, LATEST, LAST_ID, pageable);
+    }
+
+    // created_at <= bounds the index range scan; the second predicate only filters the boundary ties.
+    // Ordering by the client id as well lets the index order satisfy the ORDER BY.
+    @Query("select new com.example.message_store.dto.MessageListItem(m.uuid, m.content, m.contentDeflated, m.createdAt) " +
+            "from Message m where m.client.uuid = :clientId and m.createdAt <= :createdAt " +
+            "and (m.createdAt < :createdAt or m.uuid < :uuid) and " + NOT_EXPIRED + " order by m.client.uuid, m.createdAt desc, m.uuid desc")
+    Slice<MessageListItem> findRecentByClientIdBefore(@Param("clientId") UUID clientId, @Param("createdAt") Instant createdAt,
+                                                       @Param("uuid") UUID uuid, Pageable pageable);
+
+    @Query("select new com.example.message_store.dto.VersionedMessageResponse(m.content, m.contentDeflated, m.version, m.expiresAt) " +
+            "from Message m where m.uuid = :id and " + NOT_EXPIRED)
+    Optional<VersionedMessageResponse> findResponseById(@Param("id") UUID id);
+
+    @Query("select m.version from Message m where m.uuid = :id and " + NOT_EXPIRED)
+    Optional<Long> findVersionById(@Param("id") UUID id);
+
+    /**
+     * The updated row stays locked until the transaction ends, so the version read back is the
+     * one this update wrote.
+     */
+    @Override
+    default Optional<Long> updateContentIfOwner(UUID id, String username, String content, byte[] contentDeflated, Long expectedVersion) {
+        if (replaceContentIfOwner(id, username, content, contentDeflated, expectedVersion) == 0) {
+            return Optional.empty();
+        }
+        return findVersionById(id);
+    }
+
+    @Modifying
+    @Query("update Message m set m.content = :content, m.contentDeflated = :contentDeflated, m.version = m.version + 1 " +
+            "where m.uuid = :id and (:expectedVersion is null or m.version = :expectedVersion) and " + NOT_EXPIRED + " " +
+            "and m.client.uuid in (select c.uuid from Client c where c.username = :username)")
+    int replaceContentIfOwner(@Param("id") UUID id, @Param("username") String username,
+                              @Param("content") String content, @Param("contentDeflated") byte[] contentDeflated,
+                              @Param("expectedVersion") Long expectedVersion);
+
+    @Modifying
+    @Query("delete from Message m " +
+            "where m.uuid = :id and m.client.uuid in (select c.uuid from Client c where c.username = :username)")
+    int deleteIfOwner(@Param("id") UUID id, @Param("username") String username);
+
+    // Walks the expires_at index from its start, oldest expiry first.
+    @Query("select new com.example.message_store.dto.MessageKey(m.uuid, m.client.uuid) from Message m " +
+            "where m.expiresAt <= :now order by m.expiresAt")
+    List<MessageKey> findExpired(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Locks the rows that are still expired, so the single DELETE removes exactly the ids returned.
+     */
+    @Override
+    default List<UUID> deleteExpired(Collection<UUID> ids, Instant now) {
+        List<UUID> expired = lockExpired(ids, now);
+        if (!expired.isEmpty()) {
+            deleteByUuidIn(expired);
+        }
+        return expired;
+    }
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select m.uuid from Message m where m.uuid in :ids and m.expiresAt <= :now")
+    List<UUID> lockExpired(@Param("ids") Collection<UUID> ids, @Param("now") Instant now);
+
+    @Modifying
+    @Query("delete from Message m where m.uuid in :ids")
+    int deleteByUuidIn(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Sorts by {@link #CONTENT_TEXT} instead of the {@code content} column, which is null for
+     * compressed messages.
+     */
+    private static Pageable withContentSort(Pageable pageable) {
+        if (pageable.getSort().getOrderFor("content") == null) {
+            return pageable;
+        }
+        Sort sort = Sort.unsorted();
+        for (Sort.Order order : pageable.getSort()) {
+            sort = sort.and(order.getProperty().equals("content")
+                    ? JpaSort.unsafe(order.getDirection(), CONTENT_TEXT)
+                    : Sort.by(order));
+        }
+        return pageable.isPaged() ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort) : Pageable.unpaged(sort);
+    }
 }
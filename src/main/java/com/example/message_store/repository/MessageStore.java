@@ -0,0 +1,124 @@
+package com.example.message_store.repository;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.model.Message;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Message storage as seen by the services. {@link MessageRepository} implements it with JPA; the
+ * {@code log-store} profile replaces it with
+ * {@link com.example.message_store.repository.log.LogStructuredMessageStore}, the {@code sharded}
+ * profile with {@link com.example.message_store.repository.shard.ShardedMessageStore}.
+ * <p>
+ * Ids are ordered as unsigned 128-bit values, like the database compares UUID columns. Returned
+ * streams must be closed; the JPA store also needs a surrounding transaction to consume them.
+ * <p>
+ * The {@code find...Response} and {@code findContent...} methods back the read endpoints: they
+ * return DTOs built straight from the content columns, without entities or their clients.
+ * <p>
+ * Messages whose {@code expiresAt} has passed are invisible to every read, to
+ * {@link #existsById}, to {@link #count()} and to updates, until {@link #deleteExpired} removes
+ * them; only {@link #countByClient()} and {@link #deleteIfOwner} still see them.
+ */
+public interface MessageStore {
+    int EXPORT_FETCH_SIZE = 500;
+
+    Page<Message> findAll(Pageable pageable);
+
+    Page<MessageResponse> findAllResponses(Pageable pageable);
+
+    /**
+     * The content of a {@link #findAllResponses} page, without counting all messages.
+     */
+    List<MessageResponse> findResponses(Pageable pageable);
+
+    Slice<MessageContent> findContentByOrderByUuidAsc(Pageable pageable);
+
+    Slice<MessageContent> findContentByUuidGreaterThanOrderByUuidAsc(UUID after, Pageable pageable);
+
+    /**
+     * Newest messages of one client, ties broken by descending id.
+     */
+    Slice<MessageListItem> findRecentByClientId(UUID clientId, Pageable pageable);
+
+    /**
+     * Continues {@link #findRecentByClientId} after the message created at {@code createdAt} with
+     * id {@code uuid}.
+     */
+    Slice<MessageListItem> findRecentByClientIdBefore(UUID clientId, Instant createdAt, UUID uuid, Pageable pageable);
+
+    Optional<Message> findById(UUID id);
+
+    Optional<MessageContent> findContentById(UUID id);
+
+    /**
+     * The content of those of {@code ids} that exist, in no particular order.
+     */
+    List<MessageContent> findContentByIds(Collection<UUID> ids);
+
+    Optional<VersionedMessageResponse> findResponseById(UUID id);
+
+    Optional<Long> findVersionById(UUID id);
+
+    boolean existsById(UUID id);
+
+    long count();
+
+    /**
+     * Number of messages of every client that has any, expired ones included.
+     */
+    List<ClientMessageCount> countByClient();
+
+    /**
+     * The earliest {@code expiresAt} of any stored message, expired ones included; null when no
+     * message expires.
+     */
+    Instant findEarliestExpiry();
+
+    <S extends Message> S save(S message);
+
+    <S extends Message> List<S> saveAll(Iterable<S> messages);
+
+    Stream<Message> streamAll();
+
+    Stream<Message> streamAllByClientUsername(String username);
+
+    Stream<MessageContent> streamAllContent();
+
+    /**
+     * Replaces the content of a message owned by {@code username} and increments its version;
+     * exactly one of {@code content} and {@code contentDeflated} is non-null. With an
+     * {@code expectedVersion} nothing is updated unless the message still has that version.
+     *
+     * @return the new version, or empty when nothing was updated
+     */
+    Optional<Long> updateContentIfOwner(UUID id, String username, String content, byte[] contentDeflated, Long expectedVersion);
+
+    int deleteIfOwner(UUID id, String username);
+
+    /**
+     * Up to a page of messages that expired at or before {@code now}.
+     */
+    List<MessageKey> findExpired(Instant now, Pageable pageable);
+
+    /**
+     * Deletes those of {@code ids} that expired at or before {@code now}.
+     *
+     * @return the ids actually deleted, without those already deleted by someone else
+     */
+    List<UUID> deleteExpired(Collection<UUID> ids, Instant now);
+}
@@ -0,0 +1,763 @@
+package com.example.message_store.repository.log;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+import com.example.message_store.repository.ClientRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.service.ClientChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Log-structured message storage on local disk, enabled with the {@code log-store} profile.
+ * <p>
+ * Every write appends a record to the active memory-mapped {@link Segment}; a new segment is
+ * started when it is full. An {@link OffHeapIndex} maps each message id to its latest record. On
+ * startup the segments are replayed in order to rebuild the index, stopping at the first torn
+ * record. Sealed segments whose bytes are mostly garbage are compacted in the background: their
+ * live records are appended again and the file is deleted.
+ * <p>
+ * Writes are visible and survive a process crash as soon as they return, but are not atomic with
+ * a surrounding JPA transaction. Writes reach the disk when the OS flushes the page cache or the
+ * segment is sealed, unless {@code force-on-write} is set. Clients stay in the database; records
+ * reference them by id.
+ * <p>
+ * Expired messages are skipped by reads (their expiry is in the record header) until the expiry
+ * sweeper appends their tombstones.
+ * <p>
+ * Ordered reads scan the whole index and keep the smallest ids (or a client's newest messages,
+ * judged by record headers only) in a bounded heap, so a page costs O(n log k) rather than an
+ * index range scan. Streams sort a snapshot of the ids off-heap and read the messages one at a
+ * time; messages deleted after the snapshot are skipped. Pages sorted by content read every
+ * message but keep only the page on the heap, and are refused unpaged.
+ */
+@Log4j2
+@Primary
+@Component
+@Profile("log-store")
+public class LogStructuredMessageStore implements MessageStore {
+
+    private static final UUID NO_CLIENT = new UUID(0, 0);
+    private static final Comparator<UUID> ID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+    private static final Comparator<Recent> RECENT_FIRST = Comparator
+            .comparing(Recent::createdAt, Comparator.reverseOrder())
+            .thenComparing(Recent::id, ID_ORDER.reversed());
+
+    private final ClientRepository clientRepository;
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionGarbageRatio;
+    private final boolean forceOnWrite;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+    private final OffHeapIndex index = new OffHeapIndex(1024);
+    private final Map<UUID, Client> clientsById = new ConcurrentHashMap<>();
+    private final Map<String, UUID> clientIdsByUsername = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor;
+    private Segment active;
+
+    public LogStructuredMessageStore(ClientRepository clientRepository,
+                                     @Value("${message.store.log.dir:data/messages}") String directory,
+                                     @Value("${message.store.log.segment-size:64MB}") DataSize segmentSize,
+                                     @Value("${message.store.log.compaction.garbage-ratio:0.5}") double compactionGarbageRatio,
+                                     @Value("${message.store.log.compaction.interval:1m}") Duration compactionInterval,
+                                     @Value("${message.store.log.force-on-write:false}") boolean forceOnWrite) throws IOException {
+        this.clientRepository = clientRepository;
+        this.directory = Files.createDirectories(Path.of(directory));
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        this.forceOnWrite = forceOnWrite;
+        recover();
+        if (compactionInterval.isZero()) {
+            this.compactor = null;
+        } else {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "message-log-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = compactionInterval.toMillis();
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Page<Message> findAll(Pageable pageable) {
+        List<Message> content = pageContent(pageable);
+        return new PageImpl<>(content, pageable, pageable.isUnpaged() ? content.size() : count());
+    }
+
+    @Override
+    public Page<MessageResponse> findAllResponses(Pageable pageable) {
+        return findAll(pageable).map(MessageResponse::from);
+    }
+
+    @Override
+    public List<MessageResponse> findResponses(Pageable pageable) {
+        return pageContent(pageable).stream().map(MessageResponse::from).toList();
+    }
+
+    @Override
+    public Slice<MessageContent> findContentByOrderByUuidAsc(Pageable pageable) {
+        return findContentByUuidGreaterThanOrderByUuidAsc(null, pageable);
+    }
+
+    @Override
+    public Slice<MessageContent> findContentByUuidGreaterThanOrderByUuidAsc(UUID after, Pageable pageable) {
+        int offset = Math.toIntExact(pageable.getOffset());
+        List<UUID> ids = smallestIds(after, offset + pageable.getPageSize() + 1);
+        boolean hasNext = ids.size() > offset + pageable.getPageSize();
+        List<MessageContent> content = ids.subList(Math.min(offset, ids.size()), Math.min(ids.size(), offset + pageable.getPageSize())).stream()
+                .map(this::findContentById)
+                .flatMap(Optional::stream)
+                .toList();
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    @Override
+    public Slice<MessageListItem> findRecentByClientId(UUID clientId, Pageable pageable) {
+        return recentPage(clientId, null, pageable);
+    }
+
+    @Override
+    public Slice<MessageListItem> findRecentByClientIdBefore(UUID clientId, Instant createdAt, UUID uuid, Pageable pageable) {
+        return recentPage(clientId, new Recent(createdAt, uuid), pageable);
+    }
+
+    @Override
+    public Optional<Message> findById(UUID id) {
+        return Optional.ofNullable(readEntry(id)).map(this::toMessage);
+    }
+
+    @Override
+    public Optional<MessageContent> findContentById(UUID id) {
+        return Optional.ofNullable(readEntry(id)).map(entry -> new MessageContent(entry.id(), entry.content(), entry.contentDeflated()));
+    }
+
+    @Override
+    public List<MessageContent> findContentByIds(Collection<UUID> ids) {
+        return ids.stream()
+                .map(this::findContentById)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    @Override
+    public Optional<VersionedMessageResponse> findResponseById(UUID id) {
+        return Optional.ofNullable(readEntry(id))
+                .map(entry -> new VersionedMessageResponse(entry.content(), entry.contentDeflated(), entry.version(), entry.expiresAt()));
+    }
+
+    @Override
+    public Optional<Long> findVersionById(UUID id) {
+        long now = Segment.toMicros(Instant.now());
+        return read(() -> {
+            long location = index.get(id);
+            return isExpired(location, now) ? Optional.empty() : Optional.ofNullable(versionAt(location));
+        });
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        long now = Segment.toMicros(Instant.now());
+        return read(() -> {
+            long location = index.get(id);
+            return location != OffHeapIndex.ABSENT && !isExpired(location, now);
+        });
+    }
+
+    @Override
+    public long count() {
+        return countUnexpired();
+    }
+
+    @Override
+    public List<ClientMessageCount> countByClient() {
+        Map<UUID, long[]> counts = new HashMap<>();
+        read(() -> {
+            index.forEach((id, location) -> {
+                UUID clientId = segmentAt(location).readClientId(OffHeapIndex.offset(location));
+                if (!clientId.equals(NO_CLIENT)) {
+                    counts.computeIfAbsent(clientId, key -> new long[1])[0]++;
+                }
+            });
+            return null;
+        });
+        return counts.entrySet().stream()
+                .map(count -> new ClientMessageCount(count.getKey(), count.getValue()[0]))
+                .toList();
+    }
+
+    @Override
+    public Instant findEarliestExpiry() {
+        long earliest = read(() -> {
+            long[] min = {Long.MAX_VALUE};
+            index.forEach((id, location) -> {
+                long expiresAt = segmentAt(location).readExpiresAt(OffHeapIndex.offset(location));
+                if (expiresAt != Segment.NEVER && expiresAt < min[0]) {
+                    min[0] = expiresAt;
+                }
+            });
+            return min[0];
+        });
+        return earliest == Long.MAX_VALUE ? null : Segment.fromMicros(earliest);
+    }
+
+    @Override
+    public <S extends Message> S save(S message) {
+        saveAll(List.of(message));
+        return message;
+    }
+
+    /**
+     * Appends all messages under one lock acquisition; new messages get a time-ordered id, messages
+     * that already have one replace the stored version. Like a JPA merge, replacing fails when the
+     * message carries a version that is no longer the stored one.
+     */
+    @Override
+    public <S extends Message> List<S> saveAll(Iterable<S> messages) {
+        List<S> saved = new ArrayList<>();
+        for (S message : messages) {
+            if (message.getUuid() == null) {
+                message.setUuid(TimeOrderedUuidGenerator.generate());
+            }
+            if (!message.isCompressed() && message.getContent() == null) {
+                throw new IllegalArgumentException("Message " + message.getUuid() + " has no content");
+            }
+            saved.add(message);
+        }
+        write(() -> {
+            for (S message : saved) {
+                Long current = versionAt(index.get(message.getUuid()));
+                if (current != null && message.getVersion() != null && !current.equals(message.getVersion())) {
+                    throw new OptimisticLockingFailureException("Message " + message.getUuid() + " was modified, its current version is " + current);
+                }
+            }
+            Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+            for (S message : saved) {
+                long location = index.get(message.getUuid());
+                Long current = versionAt(location);
+                long version = current == null ? 0 : current + 1;
+                Instant createdAt = current == null ? now : segmentAt(location).readCreatedAt(OffHeapIndex.offset(location));
+                UUID clientId = message.getClient() == null ? NO_CLIENT : message.getClient().getUuid();
+                append(message.isCompressed()
+                        ? Segment.Entry.put(message.getUuid(), clientId, version, createdAt, message.getExpiresAt(), null, message.getContentDeflated())
+                        : Segment.Entry.put(message.getUuid(), clientId, version, createdAt, message.getExpiresAt(), message.getContent(), null));
+                message.setVersion(version);
+                message.setCreatedAt(createdAt);
+            }
+            return null;
+        });
+        return saved;
+    }
+
+    @Override
+    public Stream<Message> streamAll() {
+        long now = Segment.toMicros(Instant.now());
+        return sortedIds((id, location) -> !isExpired(location, now))
+                .map(this::findById)
+                .flatMap(Optional::stream);
+    }
+
+    @Override
+    public Stream<Message> streamAllByClientUsername(String username) {
+        UUID clientId = clientId(username);
+        if (clientId == null) {
+            return Stream.empty();
+        }
+        long now = Segment.toMicros(Instant.now());
+        return sortedIds((id, location) -> !isExpired(location, now)
+                && segmentAt(location).readClientId(OffHeapIndex.offset(location)).equals(clientId))
+                .map(this::findById)
+                .flatMap(Optional::stream);
+    }
+
+    @Override
+    public Stream<MessageContent> streamAllContent() {
+        long now = Segment.toMicros(Instant.now());
+        return sortedIds((id, location) -> !isExpired(location, now))
+                .map(this::findContentById)
+                .flatMap(Optional::stream);
+    }
+
+    @Override
+    public Optional<Long> updateContentIfOwner(UUID id, String username, String content, byte[] contentDeflated, Long expectedVersion) {
+        UUID clientId = clientId(username);
+        if (clientId == null) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        return write(() -> {
+            Segment.Entry current = entryAt(index.get(id));
+            if (current == null || current.isExpired(now) || !current.clientId().equals(clientId)
+                    || expectedVersion != null && current.version() != expectedVersion) {
+                return Optional.empty();
+            }
+            long version = current.version() + 1;
+            append(Segment.Entry.put(id, clientId, version, current.createdAt(), current.expiresAt(), content, contentDeflated));
+            return Optional.of(version);
+        });
+    }
+
+    @Override
+    public int deleteIfOwner(UUID id, String username) {
+        UUID clientId = clientId(username);
+        if (clientId == null) {
+            return 0;
+        }
+        return write(() -> {
+            Segment.Entry current = entryAt(index.get(id));
+            if (current == null || !current.clientId().equals(clientId)) {
+                return 0;
+            }
+            append(Segment.Entry.delete(id));
+            return 1;
+        });
+    }
+
+    /**
+     * Scans the record headers of all messages, stopping at a page worth of expired ones.
+     */
+    @Override
+    public List<MessageKey> findExpired(Instant now, Pageable pageable) {
+        long nowMicros = Segment.toMicros(now);
+        int limit = pageable.getPageSize();
+        return read(() -> {
+            List<MessageKey> expired = new ArrayList<>();
+            index.forEach((id, location) -> {
+                if (expired.size() < limit && isExpired(location, nowMicros)) {
+                    UUID clientId = segmentAt(location).readClientId(OffHeapIndex.offset(location));
+                    expired.add(new MessageKey(id, clientId.equals(NO_CLIENT) ? null : clientId));
+                }
+            });
+            return expired;
+        });
+    }
+
+    /**
+     * Appends the tombstones of one batch under a single write lock acquisition.
+     */
+    @Override
+    public List<UUID> deleteExpired(Collection<UUID> ids, Instant now) {
+        long nowMicros = Segment.toMicros(now);
+        return write(() -> {
+            List<UUID> deleted = new ArrayList<>();
+            for (UUID id : ids) {
+                long location = index.get(id);
+                if (location != OffHeapIndex.ABSENT && isExpired(location, nowMicros)) {
+                    append(Segment.Entry.delete(id));
+                    deleted.add(id);
+                }
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Rewrites every sealed segment in which at least {@code compaction.garbage-ratio} of the bytes
+     * are overwritten or deleted messages. Live records and the tombstones that may still shadow a
+     * record in an older segment are appended to the active segment, which is forced to disk
+     * before the old file is deleted. Writers wait while one segment is being copied.
+     *
+     * @return the number of segments deleted
+     */
+    public int compact() {
+        List<Segment> candidates = read(() -> segments.values().stream()
+                .filter(segment -> segment != active && segment.garbageRatio() >= compactionGarbageRatio)
+                .toList());
+        for (Segment segment : candidates) {
+            write(() -> {
+                compact(segment);
+                return null;
+            });
+        }
+        return candidates.size();
+    }
+
+    public int getSegmentCount() {
+        return read(segments::size);
+    }
+
+    /**
+     * Clients are resolved once and kept; a committed client write drops what may be stale.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClientChanged(ClientChangedEvent event) {
+        clientsById.clear();
+        if (event.username() == null) {
+            clientIdsByUsername.clear();
+        } else {
+            clientIdsByUsername.remove(event.username());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.force();
+                segment.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(Segment::isSegment).toList()) {
+                Segment segment = Segment.open(path);
+                segments.put(segment.id(), segment);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            segment.recover((offset, size, entry) -> apply(segment, offset, size, entry));
+        }
+        active = segments.isEmpty() ? newSegment() : segments.lastEntry().getValue();
+        log.info("Recovered {} messages from {} log segments in {}", index.size(), segments.size(), directory);
+    }
+
+    private void compact(Segment segment) throws IOException {
+        if (segments.get(segment.id()) != segment) {
+            return;
+        }
+        boolean olderSegments = segments.firstKey() < segment.id();
+        segment.forEach((offset, size, entry) -> {
+            long current = index.get(entry.id());
+            boolean live = entry.isPut() && current == OffHeapIndex.location(segment.id(), offset);
+            boolean shadowing = entry.type() == Segment.DELETE && current == OffHeapIndex.ABSENT && olderSegments;
+            if (live || shadowing) {
+                try {
+                    append(entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        active.force();
+        segments.remove(segment.id());
+        segment.delete();
+        log.debug("Compacted log segment {}", segment.id());
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.error("Message log compaction failed", e);
+        }
+    }
+
+    /**
+     * Called with the write lock held.
+     */
+    private void append(Segment.Entry entry) throws IOException {
+        byte[] body = entry.encode();
+        int offset = active.append(body);
+        if (offset < 0) {
+            if (Segment.FILE_HEADER_SIZE + Segment.HEADER_SIZE + body.length > segmentSize) {
+                throw new IllegalArgumentException("Message " + entry.id() + " of " + body.length + " bytes does not fit into a log segment");
+            }
+            active.force();
+            active = newSegment();
+            offset = active.append(body);
+        }
+        apply(active, offset, Segment.HEADER_SIZE + body.length, entry);
+        if (forceOnWrite) {
+            active.force();
+        }
+    }
+
+    /**
+     * Points the index at a record that was just appended or replayed and moves the bytes of the
+     * record it replaces from live to garbage.
+     */
+    private void apply(Segment segment, int offset, int size, Segment.Entry entry) {
+        long previous = entry.isPut()
+                ? index.put(entry.id(), OffHeapIndex.location(segment.id(), offset))
+                : index.remove(entry.id());
+        if (previous != OffHeapIndex.ABSENT) {
+            Segment owner = segments.get(OffHeapIndex.segmentId(previous));
+            owner.addLiveBytes(-owner.recordSize(OffHeapIndex.offset(previous)));
+        }
+        if (entry.isPut()) {
+            segment.addLiveBytes(size);
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = Segment.create(directory, id, segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * The latest record of a message, or null when it is deleted or expired.
+     */
+    private Segment.Entry readEntry(UUID id) {
+        Segment.Entry entry = read(() -> entryAt(index.get(id)));
+        return entry == null || entry.isExpired(Instant.now()) ? null : entry;
+    }
+
+    private Segment.Entry entryAt(long location) {
+        if (location == OffHeapIndex.ABSENT) {
+            return null;
+        }
+        return segments.get(OffHeapIndex.segmentId(location)).read(OffHeapIndex.offset(location));
+    }
+
+    private Segment segmentAt(long location) {
+        return segments.get(OffHeapIndex.segmentId(location));
+    }
+
+    private boolean isExpired(long location, long nowMicros) {
+        return location != OffHeapIndex.ABSENT && segmentAt(location).isExpired(OffHeapIndex.offset(location), nowMicros);
+    }
+
+    private long countUnexpired() {
+        long now = Segment.toMicros(Instant.now());
+        return read(() -> {
+            long[] count = new long[1];
+            index.forEach((id, location) -> count[0] += isExpired(location, now) ? 0 : 1);
+            return count[0];
+        });
+    }
+
+    private Long versionAt(long location) {
+        if (location == OffHeapIndex.ABSENT) {
+            return null;
+        }
+        return segmentAt(location).readVersion(OffHeapIndex.offset(location));
+    }
+
+    /**
+     * The {@code limit} newest unexpired messages of a client created before {@code before} (all
+     * when it is null), newest first. Only the record headers of non-matching messages are read.
+     */
+    private List<Recent> recent(UUID clientId, Recent before, int limit) {
+        PriorityQueue<Recent> oldestFirst = new PriorityQueue<>(RECENT_FIRST.reversed());
+        long now = Segment.toMicros(Instant.now());
+        read(() -> {
+            index.forEach((id, location) -> {
+                Segment segment = segmentAt(location);
+                int offset = OffHeapIndex.offset(location);
+                if (!segment.readClientId(offset).equals(clientId) || segment.isExpired(offset, now)) {
+                    return;
+                }
+                Recent candidate = new Recent(segment.readCreatedAt(offset), id);
+                if (before != null && RECENT_FIRST.compare(candidate, before) <= 0) {
+                    return;
+                }
+                if (oldestFirst.size() < limit) {
+                    oldestFirst.add(candidate);
+                } else if (RECENT_FIRST.compare(candidate, oldestFirst.peek()) < 0) {
+                    oldestFirst.poll();
+                    oldestFirst.add(candidate);
+                }
+            });
+            return null;
+        });
+        List<Recent> recent = new ArrayList<>(oldestFirst);
+        recent.sort(RECENT_FIRST);
+        return recent;
+    }
+
+    /**
+     * The {@code limit} smallest ids of unexpired messages greater than {@code after} (all ids when
+     * it is null), in order.
+     */
+    private List<UUID> smallestIds(UUID after, int limit) {
+        PriorityQueue<UUID> largestFirst = new PriorityQueue<>(ID_ORDER.reversed());
+        long now = Segment.toMicros(Instant.now());
+        read(() -> {
+            index.forEach((id, location) -> {
+                if (after != null && ID_ORDER.compare(id, after) <= 0 || isExpired(location, now)) {
+                    return;
+                }
+                if (largestFirst.size() < limit) {
+                    largestFirst.add(id);
+                } else if (ID_ORDER.compare(id, largestFirst.peek()) < 0) {
+                    largestFirst.poll();
+                    largestFirst.add(id);
+                }
+            });
+            return null;
+        });
+        List<UUID> ids = new ArrayList<>(largestFirst);
+        ids.sort(ID_ORDER);
+        return ids;
+    }
+
+    private List<Message> pageContent(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return sorted(pageable.getSort(), Integer.MAX_VALUE);
+        }
+        List<Message> upToPage = sorted(pageable.getSort(), Math.toIntExact(pageable.getOffset()) + pageable.getPageSize());
+        return upToPage.subList(Math.min(upToPage.size(), Math.toIntExact(pageable.getOffset())), upToPage.size());
+    }
+
+    private Slice<MessageListItem> recentPage(UUID clientId, Recent before, Pageable pageable) {
+        int offset = Math.toIntExact(pageable.getOffset());
+        List<Recent> recent = recent(clientId, before, offset + pageable.getPageSize() + 1);
+        boolean hasNext = recent.size() > offset + pageable.getPageSize();
+        List<MessageListItem> content = recent.subList(Math.min(offset, recent.size()), Math.min(recent.size(), offset + pageable.getPageSize())).stream()
+                .map(position -> readEntry(position.id()))
+                .filter(Objects::nonNull)
+                .map(entry -> new MessageListItem(entry.id(), entry.content(), entry.contentDeflated(), entry.createdAt()))
+                .toList();
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    private List<Message> sorted(Sort sort, int limit) {
+        boolean idOrder = sort.isUnsorted() || sort.stream().allMatch(order -> order.getProperty().equals("uuid") && order.isAscending());
+        if (idOrder && limit == Integer.MAX_VALUE) {
+            try (Stream<Message> all = streamAll()) {
+                return all.toList();
+            }
+        }
+        if (idOrder) {
+            return smallestIds(null, limit).stream().map(this::findById).flatMap(Optional::stream).toList();
+        }
+        if (limit == Integer.MAX_VALUE) {
+            throw new InvalidDataAccessApiUsageException("Messages can only be sorted by " + sort + " a page at a time");
+        }
+        Comparator<Message> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Message> byProperty = switch (order.getProperty()) {
+                case "uuid" -> Comparator.comparing(Message::getUuid, ID_ORDER);
+                case "content" -> Comparator.comparing(Message::getContent);
+                default -> throw new InvalidDataAccessApiUsageException("Messages cannot be sorted by " + order.getProperty());
+            };
+            byProperty = order.isAscending() ? byProperty : byProperty.reversed();
+            comparator = comparator == null ? byProperty : comparator.thenComparing(byProperty);
+        }
+        PriorityQueue<Message> lastFirst = new PriorityQueue<>(comparator.reversed());
+        try (Stream<Message> all = streamAll()) {
+            Comparator<Message> order = comparator;
+            all.forEach(message -> {
+                if (lastFirst.size() < limit) {
+                    lastFirst.add(message);
+                } else if (order.compare(message, lastFirst.peek()) < 0) {
+                    lastFirst.poll();
+                    lastFirst.add(message);
+                }
+            });
+        }
+        List<Message> page = new ArrayList<>(lastFirst);
+        page.sort(comparator);
+        return page;
+    }
+
+    /**
+     * Ids accepted by {@code filter} in order, from a snapshot taken now.
+     */
+    private Stream<UUID> sortedIds(OffHeapIndex.EntryFilter filter) {
+        OffHeapIndex.SortedIds ids = read(() -> index.sortedIds(filter));
+        return IntStream.range(0, ids.count()).mapToObj(ids::get);
+    }
+
+    private Message toMessage(Segment.Entry entry) {
+        return new Message(entry.id(), entry.content(), entry.contentDeflated(), client(entry.clientId()),
+                entry.createdAt(), entry.expiresAt(), entry.version());
+    }
+
+    private Client client(UUID clientId) {
+        if (NO_CLIENT.equals(clientId)) {
+            return null;
+        }
+        return clientsById.computeIfAbsent(clientId, id -> clientRepository.findById(id)
+                .orElseGet(() -> Client.builder().uuid(id).build()));
+    }
+
+    private UUID clientId(String username) {
+        return clientIdsByUsername.computeIfAbsent(username, key -> {
+            Client client = clientRepository.findByUsername(key);
+            return client == null ? null : client.getUuid();
+        });
+    }
+
+    private <T> T read(Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(IoAction<T> action) {
+        lock.writeLock().lock();
+        try {
+            return action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Message log write failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction<T> {
+        T run() throws IOException;
+    }
+
+    private record Recent(Instant createdAt, UUID id) {
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.message_store.repository.log;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash table from message id to log location, held in a direct buffer so that
+ * the index neither lives on the heap nor has to be scanned by the garbage collector. A slot is
+ * the 16-byte id followed by the location (segment id in the upper, offset in the lower 32 bits).
+ * Linear probing; removed entries leave tombstones that are dropped when the table is rehashed.
+ * Not thread-safe.
+ */
+final class OffHeapIndex {
+
+    static final long ABSENT = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int ID_SIZE = 16;
+    private static final int SLOT_SIZE = 24;
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final double MAX_LOAD = 0.7;
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+    private int tombstones;
+
+    OffHeapIndex(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+    }
+
+    static long location(int segmentId, int offset) {
+        return (long) segmentId << 32 | offset & 0xFFFFFFFFL;
+    }
+
+    static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offset(long location) {
+        return (int) location;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the location of {@code id}, or {@link #ABSENT}
+     */
+    long get(UUID id) {
+        int slot = find(id);
+        return slot < 0 ? ABSENT : locationAt(slot);
+    }
+
+    /**
+     * @return the previous location of {@code id}, or {@link #ABSENT}
+     */
+    long put(UUID id, long location) {
+        if (size + tombstones + 1 > (mask + 1) * MAX_LOAD) {
+            rehash(size + 1 > (mask + 1) * MAX_LOAD / 2 ? (mask + 1) << 1 : mask + 1);
+        }
+        int freeSlot = -1;
+        for (int slot = hash(id) & mask; ; slot = slot + 1 & mask) {
+            long current = locationAt(slot);
+            if (current == ABSENT) {
+                if (freeSlot < 0) {
+                    freeSlot = slot;
+                } else {
+                    tombstones--;
+                }
+                write(freeSlot, id, location);
+                size++;
+                return ABSENT;
+            }
+            if (current == TOMBSTONE) {
+                if (freeSlot < 0) {
+                    freeSlot = slot;
+                }
+            } else if (matches(slot, id)) {
+                slots.putLong(slot * SLOT_SIZE + 16, location);
+                return current;
+            }
+        }
+    }
+
+    /**
+     * @return the location {@code id} had, or {@link #ABSENT}
+     */
+    long remove(UUID id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return ABSENT;
+        }
+        long previous = locationAt(slot);
+        slots.putLong(slot * SLOT_SIZE + 16, TOMBSTONE);
+        size--;
+        tombstones++;
+        return previous;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot <= mask; slot++) {
+            long location = locationAt(slot);
+            if (location != ABSENT && location != TOMBSTONE) {
+                int base = slot * SLOT_SIZE;
+                consumer.accept(new UUID(slots.getLong(base), slots.getLong(base + 8)), location);
+            }
+        }
+    }
+
+    /**
+     * The ids of the entries accepted by {@code filter}, sorted as unsigned 128-bit values. They
+     * are copied into a direct buffer of their own, so the snapshot stays off-heap as well.
+     */
+    SortedIds sortedIds(EntryFilter filter) {
+        ByteBuffer ids = ByteBuffer.allocateDirect(Math.max(size, 1) * ID_SIZE);
+        int[] count = new int[1];
+        forEach((id, location) -> {
+            if (filter.test(id, location)) {
+                ids.putLong(count[0] * ID_SIZE, id.getMostSignificantBits());
+                ids.putLong(count[0] * ID_SIZE + 8, id.getLeastSignificantBits());
+                count[0]++;
+            }
+        });
+        SortedIds sorted = new SortedIds(ids, count[0]);
+        sorted.heapSort();
+        return sorted;
+    }
+
+    private int find(UUID id) {
+        for (int slot = hash(id) & mask; ; slot = slot + 1 & mask) {
+            long location = locationAt(slot);
+            if (location == ABSENT) {
+                return -1;
+            }
+            if (location != TOMBSTONE && matches(slot, id)) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Message index is full (" + size + " entries)");
+        }
+        ByteBuffer old = slots;
+        int oldCapacity = mask + 1;
+        allocate(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int base = slot * SLOT_SIZE;
+            long location = old.getLong(base + 16);
+            if (location != ABSENT && location != TOMBSTONE) {
+                UUID id = new UUID(old.getLong(base), old.getLong(base + 8));
+                int target = hash(id) & mask;
+                while (locationAt(target) != ABSENT) {
+                    target = target + 1 & mask;
+                }
+                write(target, id, location);
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        mask = capacity - 1;
+        size = 0;
+        tombstones = 0;
+    }
+
+    private long locationAt(int slot) {
+        return slots.getLong(slot * SLOT_SIZE + 16);
+    }
+
+    private boolean matches(int slot, UUID id) {
+        int base = slot * SLOT_SIZE;
+        return slots.getLong(base) == id.getMostSignificantBits() && slots.getLong(base + 8) == id.getLeastSignificantBits();
+    }
+
+    private void write(int slot, UUID id, long location) {
+        int base = slot * SLOT_SIZE;
+        slots.putLong(base, id.getMostSignificantBits());
+        slots.putLong(base + 8, id.getLeastSignificantBits());
+        slots.putLong(base + 16, location);
+    }
+
+    private static int hash(UUID id) {
+        long h = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(UUID id, long location);
+    }
+
+    @FunctionalInterface
+    interface EntryFilter {
+        boolean test(UUID id, long location);
+    }
+
+    /**
+     * Sorted ids in a direct buffer, 16 bytes each. Heap sort, as it needs no extra memory.
+     */
+    static final class SortedIds {
+
+        private final ByteBuffer ids;
+        private final int count;
+
+        private SortedIds(ByteBuffer ids, int count) {
+            this.ids = ids;
+            this.count = count;
+        }
+
+        int count() {
+            return count;
+        }
+
+        UUID get(int index) {
+            return new UUID(ids.getLong(index * ID_SIZE), ids.getLong(index * ID_SIZE + 8));
+        }
+
+        private void heapSort() {
+            for (int parent = count / 2 - 1; parent >= 0; parent--) {
+                siftDown(parent, count);
+            }
+            for (int end = count - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+        }
+
+        private void siftDown(int parent, int end) {
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= end) {
+                    return;
+                }
+                if (child + 1 < end && compare(child + 1, child) > 0) {
+                    child++;
+                }
+                if (compare(parent, child) >= 0) {
+                    return;
+                }
+                swap(parent, child);
+                parent = child;
+            }
+        }
+
+        private int compare(int left, int right) {
+            int byHigh = Long.compareUnsigned(ids.getLong(left * ID_SIZE), ids.getLong(right * ID_SIZE));
+            return byHigh != 0 ? byHigh : Long.compareUnsigned(ids.getLong(left * ID_SIZE + 8), ids.getLong(right * ID_SIZE + 8));
+        }
+
+        private void swap(int left, int right) {
+            for (int half = 0; half < ID_SIZE; half += 8) {
+                long value = ids.getLong(left * ID_SIZE + half);
+                ids.putLong(left * ID_SIZE + half, ids.getLong(right * ID_SIZE + half));
+                ids.putLong(right * ID_SIZE + half, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.message_store.repository.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * One pre-allocated, memory-mapped file of the message log. A file header is followed by records,
+ * which are only ever appended:
+ * <pre>
+ * file header: int magic | int format version
+ * record: int bodyLength | int crc32c(body) | body
+ * body: byte type | id (16) [| client id (16) | long version | long created | long expires | content]
+ * </pre>
+ * Times are epoch microseconds, an expiry of 0 means never. Client, version, times and content
+ * are only written for puts. The unwritten tail of
+ * the file is zero, so a zero length marks the end of the log. Files of another format version
+ * are refused rather than decoded with the wrong layout. Not thread-safe;
+ * {@link LogStructuredMessageStore} serializes writers against readers.
+ */
+final class Segment {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte PUT_DEFLATED = 3;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int HEADER_SIZE = 8;
+    /**
+     * Raise whenever the record layout changes.
+     */
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4D53474C;
+    private static final int ID_SIZE = 16;
+    static final long NEVER = 0;
+    private static final String SUFFIX = ".log";
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private long liveBytes;
+
+    private Segment(int id, Path path, FileChannel channel, int capacity) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    static Segment create(Path directory, int id, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("%010d%s", id, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, capacity);
+        segment.buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION);
+        segment.buffer.force();
+        segment.writePosition = FILE_HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * @throws IOException also when the file is not a segment of the current format version
+     */
+    static Segment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(idOf(path), path, channel, Math.toIntExact(channel.size()));
+        int magic = segment.buffer.capacity() < FILE_HEADER_SIZE ? 0 : segment.buffer.getInt(0);
+        int version = magic == MAGIC ? segment.buffer.getInt(4) : 0;
+        if (version != FORMAT_VERSION) {
+            channel.close();
+            throw new IOException(magic == MAGIC
+                    ? "Log segment " + path + " has format version " + version + ", this build reads version " + FORMAT_VERSION
+                    : "Log segment " + path + " has no format header; it was written by an older build");
+        }
+        return segment;
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    static int idOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    int id() {
+        return id;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * @return the offset of the new record, or -1 when it does not fit into the rest of the segment
+     */
+    int append(byte[] body) {
+        int offset = writePosition;
+        if (HEADER_SIZE + body.length > buffer.capacity() - offset) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        buffer.put(offset + HEADER_SIZE, body);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset, body.length);
+        writePosition = offset + HEADER_SIZE + body.length;
+        return offset;
+    }
+
+    Entry read(int offset) {
+        byte[] body = new byte[buffer.getInt(offset)];
+        buffer.get(offset + HEADER_SIZE, body);
+        return Entry.decode(body);
+    }
+
+    /**
+     * The client id of the put record at {@code offset}, without decoding its content.
+     */
+    UUID readClientId(int offset) {
+        int position = offset + HEADER_SIZE + 1 + ID_SIZE;
+        return new UUID(buffer.getLong(position), buffer.getLong(position + 8));
+    }
+
+    /**
+     * The version of the put record at {@code offset}, without decoding its content.
+     */
+    long readVersion(int offset) {
+        return buffer.getLong(offset + HEADER_SIZE + 1 + 2 * ID_SIZE);
+    }
+
+    /**
+     * The creation time of the put record at {@code offset}, without decoding its content.
+     */
+    Instant readCreatedAt(int offset) {
+        return fromMicros(buffer.getLong(offset + HEADER_SIZE + 1 + 2 * ID_SIZE + Long.BYTES));
+    }
+
+    /**
+     * Whether the put record at {@code offset} expired at or before {@code nowMicros}, without
+     * decoding its content.
+     */
+    boolean isExpired(int offset, long nowMicros) {
+        long expiresAt = readExpiresAt(offset);
+        return expiresAt != NEVER && expiresAt <= nowMicros;
+    }
+
+    /**
+     * Expiry of the put record at {@code offset} in microseconds, {@link #NEVER} when it has none.
+     */
+    long readExpiresAt(int offset) {
+        return buffer.getLong(offset + HEADER_SIZE + 1 + 2 * ID_SIZE + 2 * Long.BYTES);
+    }
+
+    int recordSize(int offset) {
+        return HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    /**
+     * Visits the records from the start of the segment up to the first one that is incomplete or
+     * fails its checksum (a write torn by a crash), and continues appending there. The rest of
+     * the file is zeroed so that the torn bytes cannot be mistaken for records later.
+     */
+    void recover(EntryVisitor visitor) {
+        int offset = FILE_HEADER_SIZE;
+        boolean torn = false;
+        while (offset <= buffer.capacity() - HEADER_SIZE) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > buffer.capacity() - offset - HEADER_SIZE) {
+                torn = true;
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(offset + HEADER_SIZE, body);
+            CRC32C crc = new CRC32C();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                torn = true;
+                break;
+            }
+            visitor.visit(offset, HEADER_SIZE + length, Entry.decode(body));
+            offset += HEADER_SIZE + length;
+        }
+        writePosition = offset;
+        if (torn) {
+            buffer.put(offset, new byte[buffer.capacity() - offset]);
+        }
+    }
+
+    /**
+     * Visits every record of a segment that was already recovered or written in this process.
+     */
+    void forEach(EntryVisitor visitor) {
+        for (int offset = FILE_HEADER_SIZE; offset < writePosition; offset += recordSize(offset)) {
+            visitor.visit(offset, recordSize(offset), read(offset));
+        }
+    }
+
+    void addLiveBytes(long delta) {
+        liveBytes += delta;
+    }
+
+    /**
+     * Share of the written bytes that belong to overwritten or deleted messages, or to tombstones.
+     */
+    double garbageRatio() {
+        int written = writePosition - FILE_HEADER_SIZE;
+        return written == 0 ? 1 : 1 - (double) liveBytes / written;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.delete(path);
+    }
+
+    static long toMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    static Instant fromMicros(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(int offset, int size, Entry entry);
+    }
+
+    /**
+     * A decoded record. {@link #PUT} carries UTF-8 {@code content}, {@link #PUT_DEFLATED} carries
+     * {@code contentDeflated} as produced by {@link com.example.message_store.util.DeflateCodec};
+     * {@link #DELETE} carries neither, nor a client id.
+     */
+    record Entry(byte type, UUID id, UUID clientId, long version, Instant createdAt, Instant expiresAt,
+                 String content, byte[] contentDeflated) {
+
+        static Entry put(UUID id, UUID clientId, long version, Instant createdAt, Instant expiresAt,
+                         String content, byte[] contentDeflated) {
+            return contentDeflated == null
+                    ? new Entry(PUT, id, clientId, version, createdAt, expiresAt, content, null)
+                    : new Entry(PUT_DEFLATED, id, clientId, version, createdAt, expiresAt, null, contentDeflated);
+        }
+
+        static Entry delete(UUID id) {
+            return new Entry(DELETE, id, null, 0, null, null, null, null);
+        }
+
+        boolean isExpired(Instant now) {
+            return expiresAt != null && !expiresAt.isAfter(now);
+        }
+
+        boolean isPut() {
+            return type != DELETE;
+        }
+
+        byte[] encode() {
+            byte[] payload = type == PUT ? content.getBytes(StandardCharsets.UTF_8) : type == PUT_DEFLATED ? contentDeflated : new byte[0];
+            ByteBuffer body = ByteBuffer.allocate(1 + ID_SIZE + (isPut() ? ID_SIZE + 3 * Long.BYTES + payload.length : 0));
+            body.put(type).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+            if (isPut()) {
+                body.putLong(clientId.getMostSignificantBits()).putLong(clientId.getLeastSignificantBits())
+                        .putLong(version).putLong(toMicros(createdAt))
+                        .putLong(expiresAt == null ? NEVER : toMicros(expiresAt)).put(payload);
+            }
+            return body.array();
+        }
+
+        static Entry decode(byte[] body) {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            byte type = buffer.get();
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            if (type == DELETE) {
+                return delete(id);
+            }
+            UUID clientId = new UUID(buffer.getLong(), buffer.getLong());
+            long version = buffer.getLong();
+            Instant createdAt = fromMicros(buffer.getLong());
+            long expiresMicros = buffer.getLong();
+            Instant expiresAt = expiresMicros == NEVER ? null : fromMicros(expiresMicros);
+            byte[] payload = Arrays.copyOfRange(body, buffer.position(), body.length);
+            return type == PUT_DEFLATED
+                    ? new Entry(type, id, clientId, version, createdAt, expiresAt, null, payload)
+                    : new Entry(type, id, clientId, version, createdAt, expiresAt, new String(payload, StandardCharsets.UTF_8), null);
+        }
+    }
+}
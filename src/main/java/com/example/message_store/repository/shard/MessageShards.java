@@ -0,0 +1,102 @@
+package com.example.message_store.repository.shard;
+
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The databases messages are split across, and which of them a message belongs on.
+ * <p>
+ * Every client hashes to one of {@link TimeOrderedUuidGenerator#SHARD_BUCKETS} buckets and all of
+ * its messages live on the shard of that bucket. New message ids carry the bucket, so single-message
+ * operations go to one shard; only ids issued before sharding have to be looked up everywhere.
+ * Buckets are spread over the shards with jump consistent hashing, so going from n to n + 1 shards
+ * moves only about 1/(n + 1) of the messages.
+ * <p>
+ * Besides the {@link #getCount() active} shards, databases of a previous, larger shard count can
+ * be kept open so that {@link ShardRebalancer} drains them; they serve no reads or writes.
+ */
+public class MessageShards implements AutoCloseable {
+
+    private final List<DataSource> dataSources;
+    private final int count;
+
+    public MessageShards(List<DataSource> dataSources, int count) {
+        if (count < 1 || count > dataSources.size()) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + dataSources.size() + ": " + count);
+        }
+        this.dataSources = List.copyOf(dataSources);
+        this.count = count;
+    }
+
+    /**
+     * Number of shards messages are placed on.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Number of open shard databases, including ones being drained.
+     */
+    public int size() {
+        return dataSources.size();
+    }
+
+    public DataSource get(int shard) {
+        return dataSources.get(shard);
+    }
+
+    /**
+     * Stable hash of a client id; it is stored in message ids and must never change.
+     */
+    public static int bucketOf(UUID clientId) {
+        if (clientId == null) {
+            return 0;
+        }
+        long hash = clientId.getMostSignificantBits() ^ clientId.getLeastSignificantBits();
+        // MurmurHash3 finalizer, as time-ordered client ids differ mostly in a few bits.
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) (hash >>> 48);
+    }
+
+    public int shardOfClient(UUID clientId) {
+        return shardOfBucket(bucketOf(clientId));
+    }
+
+    /**
+     * The shard a message id was issued for, or -1 for ids that carry no bucket.
+     */
+    public int shardOfId(UUID id) {
+        int bucket = TimeOrderedUuidGenerator.shardBucket(id);
+        return bucket < 0 ? -1 : shardOfBucket(bucket);
+    }
+
+    /**
+     * Jump consistent hash (Lamping and Veach).
+     */
+    int shardOfBucket(int bucket) {
+        long key = bucket;
+        long shard = -1;
+        long next = 0;
+        while (next < count) {
+            shard = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((shard + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) shard;
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.message_store.repository.shard;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Keeps the shards consistent with the shard count. On startup, before requests are served, it
+ * copies the schema that Hibernate and {@code data.sql} created on shard 0 to shards that have
+ * none, and copies the clients to every shard. Then, if {@code message.shards.rebalance-on-startup}
+ * is set, it {@link #rebalance() rebalances}.
+ * <p>
+ * Clients are only copied here, so clients must not be added while the application runs.
+ */
+@Log4j2
+@Component
+@Profile("sharded")
+public class ShardRebalancer implements SmartInitializingSingleton {
+
+    private final MessageShards shards;
+    private final boolean rebalanceOnStartup;
+    private final int batchSize;
+
+    public ShardRebalancer(MessageShards shards,
+                           @Value("${message.shards.rebalance-on-startup:true}") boolean rebalanceOnStartup,
+                           @Value("${message.shards.rebalance-batch-size:500}") int batchSize) {
+        this.shards = shards;
+        this.rebalanceOnStartup = rebalanceOnStartup;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        prepareShards();
+        if (rebalanceOnStartup) {
+            long start = System.nanoTime();
+            long moved = rebalance();
+            log.info("Rebalanced {} shards in {} ms, moved {} messages",
+                    shards.getCount(), (System.nanoTime() - start) / 1_000_000, moved);
+        }
+    }
+
+    /**
+     * Moves every message that is not on its client's shard there, including all messages of
+     * drained shards, in batches of {@code message.shards.rebalance-batch-size}. A batch is first
+     * written to its shard and then deleted from the old one, so a rerun after a failure finishes
+     * the move. Requests never write to the old copy: they already route to the new shard.
+     *
+     * @return number of messages moved
+     */
+    public synchronized long rebalance() {
+        long moved = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            moved += drain(shard);
+        }
+        return moved;
+    }
+
+    /**
+     * Messages on each open shard, including ones being drained.
+     */
+    public List<Long> countByShard() {
+        List<Long> counts = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            counts.add(jdbc(shard).queryForObject("select count(*) from messages", Long.class));
+        }
+        return counts;
+    }
+
+    private void prepareShards() {
+        JdbcTemplate primary = jdbc(0);
+        List<String> schema = primary.query("SCRIPT NODATA", (rs, row) -> rs.getString(1)).stream()
+                .filter(statement -> !statement.startsWith("--") && !statement.startsWith("CREATE USER"))
+                .toList();
+        List<Map<String, Object>> clients = primary.queryForList("select * from clients");
+        for (int shard = 1; shard < shards.size(); shard++) {
+            JdbcTemplate jdbc = jdbc(shard);
+            Integer tables = jdbc.queryForObject(
+                    "select count(*) from information_schema.tables where table_schema = 'PUBLIC' and table_name = 'MESSAGES'",
+                    Integer.class);
+            if (tables == null || tables == 0) {
+                schema.forEach(jdbc::execute);
+                log.info("Created the message schema on shard {}", shard);
+            }
+            mergeRows(jdbc, "clients", clients);
+        }
+    }
+
+    private long drain(int source) {
+        JdbcTemplate jdbc = jdbc(source);
+        long moved = 0;
+        UUID after = null;
+        List<Map<String, Object>> rows;
+        do {
+            rows = after == null
+                    ? jdbc.queryForList("select * from messages order by uuid limit ?", batchSize)
+                    : jdbc.queryForList("select * from messages where uuid > ? order by uuid limit ?", after, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            after = (UUID) rows.get(rows.size() - 1).get("uuid");
+            Map<Integer, List<Map<String, Object>>> misplaced = new TreeMap<>();
+            for (Map<String, Object> row : rows) {
+                int target = shards.shardOfClient((UUID) row.get("client_id"));
+                if (target != source) {
+                    misplaced.computeIfAbsent(target, shard -> new ArrayList<>()).add(row);
+                }
+            }
+            for (Map.Entry<Integer, List<Map<String, Object>>> batch : misplaced.entrySet()) {
+                move(source, batch.getKey(), batch.getValue());
+                moved += batch.getValue().size();
+            }
+        } while (rows.size() == batchSize);
+        return moved;
+    }
+
+    private void move(int source, int target, List<Map<String, Object>> rows) {
+        transaction(target).executeWithoutResult(status -> mergeRows(jdbc(target), "messages", rows));
+        List<Object[]> ids = rows.stream().map(row -> new Object[]{row.get("uuid")}).toList();
+        transaction(source).executeWithoutResult(status -> jdbc(source).batchUpdate("delete from messages where uuid = ?", ids));
+    }
+
+    /**
+     * Inserts or overwrites {@code rows}, all read from {@code table}, by their uuid.
+     */
+    private static void mergeRows(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = List.copyOf(rows.get(0).keySet());
+        String sql = "MERGE INTO " + table + " (" + String.join(", ", columns) + ") KEY(uuid) VALUES ("
+                + String.join(", ", columns.stream().map(column -> "?").toList()) + ")";
+        jdbc.batchUpdate(sql, rows.stream().map(row -> columns.stream().map(row::get).toArray()).toList());
+    }
+
+    private JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate(shards.get(shard));
+    }
+
+    private TransactionTemplate transaction(int shard) {
+        return new TransactionTemplate(new DataSourceTransactionManager(shards.get(shard)));
+    }
+}
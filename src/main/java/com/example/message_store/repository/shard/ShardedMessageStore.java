@@ -0,0 +1,559 @@
+package com.example.message_store.repository.shard;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.model.TimeOrderedUuidGenerator;
+import com.example.message_store.repository.ClientRepository;
+import com.example.message_store.repository.MessageRepository;
+import com.example.message_store.repository.MessageStore;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Messages split across the {@link MessageShards}, enabled with the {@code sharded} profile. Every
+ * shard has the full schema and runs the {@link MessageRepository} queries; this store only picks
+ * the shard or, for listings, asks all of them and merges the results.
+ * <p>
+ * Saves go to the client's shard, and so do updates and deletes of ids without a shard bucket:
+ * they are owner-checked, and an owner's messages are all on its shard. Other single-message reads
+ * go to the shard in the id. Listings and counts query every shard in parallel and merge: an offset
+ * page reads the first offset + size rows of each shard, streams page through the shards by id.
+ * <p>
+ * Each call is its own transaction on its shard, whether or not the caller has one open. A batch
+ * spanning several clients is therefore not atomic, and a stream is not a snapshot. Offset pages
+ * can be sorted by {@code uuid}, {@code content} and {@code createdAt}.
+ */
+@Primary
+@Profile("sharded")
+@Component
+public class ShardedMessageStore implements MessageStore {
+
+    private static final Comparator<UUID> ID_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+    private static final Sort BY_ID = Sort.by("uuid");
+    private static final Pageable STREAM_PAGE = PageRequest.of(0, EXPORT_FETCH_SIZE);
+
+    private final MessageRepository messageRepository;
+    private final ClientRepository clientRepository;
+    private final MessageShards shards;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final ExecutorService queries;
+
+    public ShardedMessageStore(MessageRepository messageRepository,
+                               ClientRepository clientRepository,
+                               MessageShards shards,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${message.shards.query-threads:16}") int queryThreads) {
+        this.messageRepository = messageRepository;
+        this.clientRepository = clientRepository;
+        this.shards = shards;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        AtomicInteger threads = new AtomicInteger();
+        this.queries = Executors.newFixedThreadPool(queryThreads, task -> {
+            Thread thread = new Thread(task, "message-shard-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Page<Message> findAll(Pageable pageable) {
+        Sort sort = pageable.getSort().isSorted() ? pageable.getSort() : BY_ID;
+        Comparator<Message> order = comparator(sort);
+        List<Page<Message>> pages = onEveryShard(readTransaction, repository -> repository.findAll(upToPage(pageable, sort)));
+        List<Message> merged = merge(pages.stream().map(Page::getContent).toList(), order, end(pageable));
+        return new PageImpl<>(page(merged, pageable), pageable, pages.stream().mapToLong(Page::getTotalElements).sum());
+    }
+
+    @Override
+    public Page<MessageResponse> findAllResponses(Pageable pageable) {
+        return findAll(pageable).map(MessageResponse::from);
+    }
+
+    /**
+     * In id order the page is merged from content projections; any other order loads and counts
+     * messages like {@link #findAll(Pageable)}.
+     */
+    @Override
+    public List<MessageResponse> findResponses(Pageable pageable) {
+        if (!isIdOrder(pageable.getSort())) {
+            return findAll(pageable).map(MessageResponse::from).getContent();
+        }
+        return contentPage(null, pageable).map(message -> new MessageResponse(message.content())).getContent();
+    }
+
+    @Override
+    public Slice<MessageContent> findContentByOrderByUuidAsc(Pageable pageable) {
+        return contentPage(null, pageable);
+    }
+
+    @Override
+    public Slice<MessageContent> findContentByUuidGreaterThanOrderByUuidAsc(UUID after, Pageable pageable) {
+        return contentPage(after, pageable);
+    }
+
+    @Override
+    public Slice<MessageListItem> findRecentByClientId(UUID clientId, Pageable pageable) {
+        return onShard(shards.shardOfClient(clientId), readTransaction, repository -> repository.findRecentByClientId(clientId, pageable));
+    }
+
+    @Override
+    public Slice<MessageListItem> findRecentByClientIdBefore(UUID clientId, Instant createdAt, UUID uuid, Pageable pageable) {
+        return onShard(shards.shardOfClient(clientId), readTransaction,
+                repository -> repository.findRecentByClientIdBefore(clientId, createdAt, uuid, pageable));
+    }
+
+    @Override
+    public Optional<Message> findById(UUID id) {
+        return byId(id, repository -> repository.findById(id));
+    }
+
+    @Override
+    public Optional<MessageContent> findContentById(UUID id) {
+        return byId(id, repository -> repository.findContentById(id));
+    }
+
+    @Override
+    public List<MessageContent> findContentByIds(Collection<UUID> ids) {
+        Map<Integer, List<UUID>> idsByShard = idsByShard(ids);
+        return onShards(List.copyOf(idsByShard.keySet()), shard -> onShard(shard, readTransaction,
+                repository -> repository.findContentByIds(idsByShard.get(shard)))).stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @Override
+    public Optional<VersionedMessageResponse> findResponseById(UUID id) {
+        return byId(id, repository -> repository.findResponseById(id));
+    }
+
+    @Override
+    public Optional<Long> findVersionById(UUID id) {
+        return byId(id, repository -> repository.findVersionById(id));
+    }
+
+    @Override
+    public boolean existsById(UUID id) {
+        return byId(id, repository -> Optional.of(id).filter(repository::existsById)).isPresent();
+    }
+
+    @Override
+    public long count() {
+        return onEveryShard(readTransaction, MessageRepository::count).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public Instant findEarliestExpiry() {
+        return onEveryShard(readTransaction, MessageRepository::findEarliestExpiry).stream()
+                .filter(Objects::nonNull)
+                .min(Comparator.naturalOrder())
+                .orElse(null);
+    }
+
+    @Override
+    public List<ClientMessageCount> countByClient() {
+        Map<UUID, Long> counts = new HashMap<>();
+        onEveryShard(readTransaction, MessageRepository::countByClient).forEach(shardCounts -> shardCounts
+                .forEach(count -> counts.merge(count.clientId(), count.count(), Long::sum)));
+        return counts.entrySet().stream()
+                .map(count -> new ClientMessageCount(count.getKey(), count.getValue()))
+                .toList();
+    }
+
+    /**
+     * New messages get an id carrying their client's shard bucket.
+     */
+    @Override
+    public <S extends Message> S save(S message) {
+        UUID clientId = clientId(message);
+        assignId(message, clientId);
+        return onShard(shards.shardOfClient(clientId), writeTransaction, repository -> repository.save(message));
+    }
+
+    @Override
+    public <S extends Message> List<S> saveAll(Iterable<S> messages) {
+        List<S> toSave = new ArrayList<>();
+        messages.forEach(toSave::add);
+        Map<Integer, List<Integer>> positionsByShard = new TreeMap<>();
+        for (int i = 0; i < toSave.size(); i++) {
+            UUID clientId = clientId(toSave.get(i));
+            assignId(toSave.get(i), clientId);
+            positionsByShard.computeIfAbsent(shards.shardOfClient(clientId), shard -> new ArrayList<>()).add(i);
+        }
+        List<Integer> targets = List.copyOf(positionsByShard.keySet());
+        List<List<S>> saved = onShards(targets, shard -> onShard(shard, writeTransaction, repository ->
+                repository.saveAll(positionsByShard.get(shard).stream().map(toSave::get).toList())));
+        List<S> result = new ArrayList<>(toSave);
+        for (int i = 0; i < targets.size(); i++) {
+            List<Integer> positions = positionsByShard.get(targets.get(i));
+            for (int j = 0; j < positions.size(); j++) {
+                result.set(positions.get(j), saved.get(i).get(j));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<Message> streamAll() {
+        return keysetStream(activeShards(), (repository, after) -> repository.findAllAfter(after, STREAM_PAGE), Message::getUuid);
+    }
+
+    @Override
+    public Stream<Message> streamAllByClientUsername(String username) {
+        Client client = clientRepository.findByUsername(username);
+        if (client == null) {
+            return Stream.empty();
+        }
+        return keysetStream(List.of(shards.shardOfClient(client.getUuid())),
+                (repository, after) -> repository.findAllByClientUsernameAfter(username, after, STREAM_PAGE), Message::getUuid);
+    }
+
+    @Override
+    public Stream<MessageContent> streamAllContent() {
+        return keysetStream(activeShards(),
+                (repository, after) -> repository.findContentByUuidGreaterThanOrderByUuidAsc(after, STREAM_PAGE).getContent(),
+                MessageContent::uuid);
+    }
+
+    @Override
+    public Optional<Long> updateContentIfOwner(UUID id, String username, String content, byte[] contentDeflated, Long expectedVersion) {
+        int shard = ownerShard(id, username);
+        if (shard < 0) {
+            return Optional.empty();
+        }
+        return onShard(shard, writeTransaction,
+                repository -> repository.updateContentIfOwner(id, username, content, contentDeflated, expectedVersion));
+    }
+
+    @Override
+    public int deleteIfOwner(UUID id, String username) {
+        int shard = ownerShard(id, username);
+        if (shard < 0) {
+            return 0;
+        }
+        return onShard(shard, writeTransaction, repository -> repository.deleteIfOwner(id, username));
+    }
+
+    /**
+     * Up to a page of expired messages from all shards together, not ordered by expiry.
+     */
+    @Override
+    public List<MessageKey> findExpired(Instant now, Pageable pageable) {
+        return onEveryShard(readTransaction, repository -> repository.findExpired(now, pageable)).stream()
+                .flatMap(List::stream)
+                .limit(pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE)
+                .toList();
+    }
+
+    @Override
+    public List<UUID> deleteExpired(Collection<UUID> ids, Instant now) {
+        Map<Integer, List<UUID>> idsByShard = idsByShard(ids);
+        return onShards(List.copyOf(idsByShard.keySet()), shard -> onShard(shard, writeTransaction,
+                repository -> repository.deleteExpired(idsByShard.get(shard), now))).stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    @PreDestroy
+    public void close() {
+        queries.shutdownNow();
+    }
+
+    private Slice<MessageContent> contentPage(UUID after, Pageable pageable) {
+        Pageable upToPage = upToPage(pageable, Sort.unsorted());
+        List<Slice<MessageContent>> slices = onEveryShard(readTransaction, repository -> after == null
+                ? repository.findContentByOrderByUuidAsc(upToPage)
+                : repository.findContentByUuidGreaterThanOrderByUuidAsc(after, upToPage));
+        long end = end(pageable);
+        List<MessageContent> merged = merge(slices.stream().map(Slice::getContent).toList(),
+                Comparator.comparing(MessageContent::uuid, ID_ORDER), end == Long.MAX_VALUE ? end : end + 1);
+        boolean hasNext = merged.size() > end || slices.stream().anyMatch(Slice::hasNext);
+        return new SliceImpl<>(page(merged, pageable), pageable, hasNext);
+    }
+
+    /**
+     * Groups ids by the shard in the id; an id without one goes to every shard.
+     */
+    private Map<Integer, List<UUID>> idsByShard(Collection<UUID> ids) {
+        Map<Integer, List<UUID>> idsByShard = new TreeMap<>();
+        for (UUID id : ids) {
+            int shard = shards.shardOfId(id);
+            List<Integer> targets = shard < 0 ? activeShards() : List.of(shard);
+            targets.forEach(target -> idsByShard.computeIfAbsent(target, key -> new ArrayList<>()).add(id));
+        }
+        return idsByShard;
+    }
+
+    private <T> Optional<T> byId(UUID id, Function<MessageRepository, Optional<T>> query) {
+        int shard = shards.shardOfId(id);
+        if (shard >= 0) {
+            return onShard(shard, readTransaction, query);
+        }
+        return onEveryShard(readTransaction, query).stream().flatMap(Optional::stream).findFirst();
+    }
+
+    /**
+     * The shard in the id or, for an id without one, the shard of {@code username}; -1 for an
+     * unknown user, who owns nothing.
+     */
+    private int ownerShard(UUID id, String username) {
+        int shard = shards.shardOfId(id);
+        if (shard >= 0) {
+            return shard;
+        }
+        Client owner = clientRepository.findByUsername(username);
+        return owner == null ? -1 : shards.shardOfClient(owner.getUuid());
+    }
+
+    private <T> T onShard(int shard, TransactionTemplate transaction, Function<MessageRepository, T> query) {
+        return ShardRoutingDataSource.onShard(shard, () -> transaction.execute(status -> query.apply(messageRepository)));
+    }
+
+    private <T> List<T> onEveryShard(TransactionTemplate transaction, Function<MessageRepository, T> query) {
+        return onShards(activeShards(), shard -> onShard(shard, transaction, query));
+    }
+
+    /**
+     * Runs {@code work} for every shard in parallel and returns the results in the order of
+     * {@code targets}.
+     */
+    private <T> List<T> onShards(List<Integer> targets, IntFunction<T> work) {
+        if (targets.size() == 1) {
+            return Collections.singletonList(work.apply(targets.get(0)));
+        }
+        List<Future<T>> futures = targets.stream().map(shard -> queries.submit(() -> work.apply(shard))).toList();
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Interrupted while querying the message shards", e);
+        } finally {
+            // Running queries are left to finish: interrupting H2 may close the database.
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Merges the rows of {@code targets} in id order, reading each shard a page at a time in short
+     * transactions.
+     */
+    private <T> Stream<T> keysetStream(List<Integer> targets, BiFunction<MessageRepository, UUID, List<T>> nextPage, Function<T, UUID> id) {
+        Iterator<T> merged = new Iterator<>() {
+            private PriorityQueue<KeysetCursor<T>> cursors;
+
+            @Override
+            public boolean hasNext() {
+                return !cursors().isEmpty();
+            }
+
+            @Override
+            public T next() {
+                KeysetCursor<T> cursor = cursors().poll();
+                if (cursor == null) {
+                    throw new NoSuchElementException();
+                }
+                T row = cursor.head;
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+                return row;
+            }
+
+            private PriorityQueue<KeysetCursor<T>> cursors() {
+                if (cursors == null) {
+                    cursors = new PriorityQueue<>(Comparator.comparing(cursor -> id.apply(cursor.head), ID_ORDER));
+                    for (int shard : targets) {
+                        KeysetCursor<T> cursor = new KeysetCursor<>(shard, nextPage, id);
+                        if (cursor.advance()) {
+                            cursors.add(cursor);
+                        }
+                    }
+                }
+                return cursors;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private List<Integer> activeShards() {
+        return IntStream.range(0, shards.getCount()).boxed().toList();
+    }
+
+    private static void assignId(Message message, UUID clientId) {
+        if (message.getUuid() == null) {
+            message.setUuid(TimeOrderedUuidGenerator.generate(MessageShards.bucketOf(clientId)));
+        }
+    }
+
+    private static UUID clientId(Message message) {
+        return message.getClient() == null ? null : message.getClient().getUuid();
+    }
+
+    private static boolean isIdOrder(Sort sort) {
+        return sort.isUnsorted() || sort.stream().allMatch(order -> order.getProperty().equals("uuid") && order.isAscending());
+    }
+
+    private static Comparator<Message> comparator(Sort sort) {
+        Comparator<Message> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Message> byProperty = switch (order.getProperty()) {
+                case "uuid" -> Comparator.comparing(Message::getUuid, ID_ORDER);
+                case "content" -> Comparator.comparing(Message::getContent);
+                case "createdAt" -> Comparator.comparing(Message::getCreatedAt);
+                default -> throw new InvalidDataAccessApiUsageException("Sharded messages cannot be sorted by " + order.getProperty());
+            };
+            byProperty = order.isAscending() ? byProperty : byProperty.reversed();
+            comparator = comparator == null ? byProperty : comparator.thenComparing(byProperty);
+        }
+        return comparator;
+    }
+
+    /**
+     * The first page up to and including {@code pageable}, which every shard has to return in full.
+     */
+    private static Pageable upToPage(Pageable pageable, Sort sort) {
+        return pageable.isUnpaged() ? Pageable.unpaged(sort) : PageRequest.of(0, Math.toIntExact(end(pageable)), sort);
+    }
+
+    private static long end(Pageable pageable) {
+        return pageable.isUnpaged() ? Long.MAX_VALUE : pageable.getOffset() + pageable.getPageSize();
+    }
+
+    private static <T> List<T> page(List<T> upToPage, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return upToPage;
+        }
+        int offset = Math.toIntExact(Math.min(pageable.getOffset(), upToPage.size()));
+        return upToPage.subList(offset, Math.min(upToPage.size(), offset + pageable.getPageSize()));
+    }
+
+    /**
+     * The first {@code limit} rows of lists that are each sorted in {@code order}.
+     */
+    private static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> order, long limit) {
+        Map<Iterator<T>, T> current = new HashMap<>();
+        PriorityQueue<Iterator<T>> heads = new PriorityQueue<>(Comparator.comparing(current::get, order));
+        List<T> merged = new ArrayList<>();
+        for (List<T> rows : sorted) {
+            Iterator<T> iterator = rows.iterator();
+            if (iterator.hasNext()) {
+                current.put(iterator, iterator.next());
+                heads.add(iterator);
+            }
+        }
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Iterator<T> iterator = heads.poll();
+            merged.add(current.get(iterator));
+            if (iterator.hasNext()) {
+                current.put(iterator, iterator.next());
+                heads.add(iterator);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Read position in one shard: the current row and the rest of its page.
+     */
+    private final class KeysetCursor<T> {
+        private final int shard;
+        private final BiFunction<MessageRepository, UUID, List<T>> nextPage;
+        private final Function<T, UUID> id;
+        private Iterator<T> page = Collections.emptyIterator();
+        private UUID after = MessageRepository.FIRST_ID;
+        private boolean lastPage;
+        private T head;
+
+        private KeysetCursor(int shard, BiFunction<MessageRepository, UUID, List<T>> nextPage, Function<T, UUID> id) {
+            this.shard = shard;
+            this.nextPage = nextPage;
+            this.id = id;
+        }
+
+        /**
+         * Moves to the next row, reading the next page when this one is used up.
+         *
+         * @return false at the end of the shard
+         */
+        private boolean advance() {
+            if (!page.hasNext() && !lastPage) {
+                List<T> rows = onShard(shard, readTransaction, repository -> nextPage.apply(repository, after));
+                lastPage = rows.size() < EXPORT_FETCH_SIZE;
+                if (!rows.isEmpty()) {
+                    after = id.apply(rows.get(rows.size() - 1));
+                }
+                page = rows.iterator();
+            }
+            head = page.hasNext() ? page.next() : null;
+            return head != null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.message_store.service;
+
+import com.example.message_store.model.Client;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * JPA listener of {@link Client}, created by Hibernate through the Spring bean container. Turns
+ * client writes into {@link ClientChangedEvent}s for the caches keyed by username.
+ */
+@AllArgsConstructor
+public class ClientChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostRemove
+    public void onInsertOrDelete(Client client) {
+        eventPublisher.publishEvent(new ClientChangedEvent(client.getUsername()));
+    }
+
+    @PostUpdate
+    public void onUpdate(Client client) {
+        eventPublisher.publishEvent(new ClientChangedEvent(null));
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.message_store.service;
+
+/**
+ * Published when a client is written through JPA; {@code username} is null when the change may
+ * have renamed it, so that any cached username could be stale.
+ */
+public record ClientChangedEvent(String username) {
+}
@@ -2,15 +2,111 @@ package com.example.message_store.service;
 
 import com.example.message_store.model.Client;
 import com.example.message_store.repository.ClientRepository;
-import lombok.AllArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Username lookups are cached for {@code client.cache.ttl}. Client writes through JPA evict the
+ * affected entries once they commit; the TTL bounds how long a change made directly in the
+ * database takes to show.
+ */
 @Service
-@AllArgsConstructor
-public class ClientService {
+public class ClientService implements MeterBinder {
     private final ClientRepository clientRepository;
+    private final Cache<String, CachedClient> clientIds;
+
+    public ClientService(ClientRepository clientRepository,
+                         @Value("${client.cache.max-size:10000}") long cacheMaxSize,
+                         @Value("${client.cache.ttl:10m}") Duration cacheTtl) {
+        this.clientRepository = clientRepository;
+        this.clientIds = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+    }
 
     public Client getClientByUsername(String username) {
         return clientRepository.findByUsername(username);
     }
+
+    /**
+     * Returns an uninitialized reference to the client, which is all that is needed to set the
+     * foreign key of a new message. The username to id mapping is cached, so in the common case
+     * no query is issued at all. Returns null for unknown usernames, which are not cached.
+     */
+    public Client getClientReference(String username) {
+        CachedClient client = cachedClient(username);
+        return client == null ? null : clientRepository.getReferenceById(client.uuid());
+    }
+
+    /**
+     * The client's id from the same cache, or null for unknown usernames.
+     */
+    public UUID getClientId(String username) {
+        CachedClient client = cachedClient(username);
+        return client == null ? null : client.uuid();
+    }
+
+    /**
+     * The client's default message lifetime in seconds, from the same cache; null when its
+     * messages do not expire or the client is unknown.
+     */
+    public Long getMessageTtlSeconds(String username) {
+        CachedClient client = cachedClient(username);
+        return client == null ? null : client.messageTtlSeconds();
+    }
+
+    public void evictClient(String username) {
+        clientIds.invalidate(username);
+    }
+
+    public void evictAllClients() {
+        clientIds.invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClientChanged(ClientChangedEvent event) {
+        if (event.username() == null) {
+            evictAllClients();
+        } else {
+            evictClient(event.username());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, clientIds, "clientIds");
+    }
+
+    public long getCacheHits() {
+        return clientIds.stats().hitCount();
+    }
+
+    public long getCacheMisses() {
+        return clientIds.stats().missCount();
+    }
+
+    public double getCacheHitRate() {
+        return clientIds.stats().hitRate();
+    }
+
+    private CachedClient cachedClient(String username) {
+        return clientIds.get(username, key -> {
+            Client client = clientRepository.findByUsername(key);
+            return client == null ? null : new CachedClient(client.getUuid(), client.getMessageTtlSeconds());
+        });
+    }
+
+    private record CachedClient(UUID uuid, Long messageTtlSeconds) {
+    }
 }
@@ -0,0 +1,51 @@
+package com.example.message_store.service;
+
+import com.example.message_store.model.Message;
+import com.example.message_store.util.DeflateCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how message content is stored: bodies of at least {@code message.compression.min-length}
+ * characters are deflated into {@code content_deflated}, unless that does not make them smaller.
+ * Reading them back is lazy, see {@link Message#getContent()}.
+ */
+@Component
+public class MessageContentCompressor {
+
+    private final boolean enabled;
+    private final int minLength;
+    private final int level;
+
+    public MessageContentCompressor(@Value("${message.compression.enabled:true}") boolean enabled,
+                                    @Value("${message.compression.min-length:1024}") int minLength,
+                                    @Value("${message.compression.level:1}") int level) {
+        this.enabled = enabled;
+        this.minLength = minLength;
+        this.level = level;
+    }
+
+    /**
+     * @return the deflated content, or null when it is to be stored as is
+     */
+    public byte[] deflate(String content) {
+        if (!enabled || content == null || content.length() < minLength) {
+            return null;
+        }
+        byte[] deflated = DeflateCodec.deflate(content, level);
+        return deflated.length < content.length() ? deflated : null;
+    }
+
+    /**
+     * Moves the content of a message that is about to be inserted into the deflated column when
+     * that pays off.
+     */
+    public Message compress(Message message) {
+        byte[] deflated = deflate(message.getContent());
+        if (deflated != null) {
+            message.setContentDeflated(deflated);
+            message.setContent(null);
+        }
+        return message;
+    }
+}
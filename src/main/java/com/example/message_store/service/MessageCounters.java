@@ -0,0 +1,163 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageStatsResponse;
+import com.example.message_store.repository.MessageStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Total and per-client message counts, kept up to date from {@link MessageEvent}s after the
+ * writing transaction commits instead of being counted on every request. Each count is a
+ * {@link LongAdder}, so concurrent writers of the same client update separate cells.
+ * <p>
+ * The counts are set from the database on startup and by {@link #reconcile()}; a write that
+ * commits while that count runs may be off by one until the next reconciliation. Unlike
+ * {@link MessageStore#count()}, they include expired messages until the sweeper deletes them, so
+ * the total is only {@link #isTotalExact exact} before the earliest expiry of any stored message.
+ * That expiry is lowered by every created message that expires and read again from the store
+ * after each sweep.
+ */
+@Log4j2
+@Component
+public class MessageCounters implements MeterBinder {
+
+    private final MessageStore messageStore;
+    private final TransactionTemplate readOnlyTransaction;
+    private final LongAdder total = new LongAdder();
+    private final Map<UUID, LongAdder> perClient = new ConcurrentHashMap<>();
+    // Epoch millis, rounded down; Long.MAX_VALUE when no stored message expires.
+    private final AtomicLong earliestExpiry = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong earliestExpirySinceRefresh = new AtomicLong(Long.MAX_VALUE);
+    private volatile boolean reconciled;
+
+    public MessageCounters(MessageStore messageStore, PlatformTransactionManager transactionManager) {
+        this.messageStore = messageStore;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        long counted = reconcile();
+        log.info("Counted {} messages", counted);
+    }
+
+    /**
+     * Sets every count to what the database holds now.
+     *
+     * @return the total number of messages
+     */
+    public synchronized long reconcile() {
+        List<ClientMessageCount> counts = readOnlyTransaction.execute(status -> messageStore.countByClient());
+        Map<UUID, Long> byClient = new HashMap<>();
+        long counted = 0;
+        for (ClientMessageCount count : counts) {
+            if (count.clientId() != null) {
+                byClient.put(count.clientId(), count.count());
+            }
+            counted += count.count();
+        }
+        // Adjust rather than reset, so increments racing with this one are not lost.
+        perClient.forEach((clientId, count) -> count.add(-count.sum()));
+        byClient.forEach((clientId, count) -> counter(clientId).add(count));
+        total.add(counted - total.sum());
+        refreshEarliestExpiry();
+        reconciled = true;
+        return counted;
+    }
+
+    /**
+     * Reads the earliest expiry of any stored message from the store, keeping the expiries of
+     * messages created meanwhile.
+     */
+    public synchronized void refreshEarliestExpiry() {
+        earliestExpirySinceRefresh.set(Long.MAX_VALUE);
+        Instant stored = readOnlyTransaction.execute(status -> messageStore.findEarliestExpiry());
+        long storedMillis = stored == null ? Long.MAX_VALUE : stored.toEpochMilli();
+        earliestExpiry.set(Math.min(storedMillis, earliestExpirySinceRefresh.get()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        switch (event.type()) {
+            case CREATED -> {
+                add(event.clientId(), 1);
+                if (event.expiresAt() != null) {
+                    long expiresAt = event.expiresAt().toEpochMilli();
+                    earliestExpirySinceRefresh.accumulateAndGet(expiresAt, Math::min);
+                    earliestExpiry.accumulateAndGet(expiresAt, Math::min);
+                }
+            }
+            case DELETED -> add(event.clientId(), -1);
+            case UPDATED -> {
+            }
+        }
+    }
+
+    /**
+     * Whether {@link #getTotal()} equals the number of unexpired messages at {@code now}: the
+     * counts are reconciled and no stored message has expired yet.
+     */
+    public boolean isTotalExact(Instant now) {
+        return reconciled && now.toEpochMilli() < earliestExpiry.get();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getCount(UUID clientId) {
+        LongAdder count = perClient.get(clientId);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * The total and the {@code limit} clients with the most messages.
+     */
+    public MessageStatsResponse getStats(int limit) {
+        List<ClientMessageCount> clients = perClient.entrySet().stream()
+                .map(count -> new ClientMessageCount(count.getKey(), count.getValue().sum()))
+                .filter(count -> count.count() > 0)
+                .sorted(Comparator.comparingLong(ClientMessageCount::count).reversed())
+                .limit(limit)
+                .toList();
+        return new MessageStatsResponse(total.sum(), clients);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("message.count", total, LongAdder::sum)
+                .description("Stored messages, from the maintained counters")
+                .register(registry);
+    }
+
+    private void add(UUID clientId, long delta) {
+        total.add(delta);
+        if (clientId != null) {
+            counter(clientId).add(delta);
+        }
+    }
+
+    private LongAdder counter(UUID clientId) {
+        return perClient.computeIfAbsent(clientId, key -> new LongAdder());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.message_store.service;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Published by {@link MessageService} for every successful write. Listeners that must only see
+ * committed state use {@code @TransactionalEventListener}. {@code content} is the new content for
+ * CREATED and UPDATED and null for DELETED; {@code clientId} is the owner for CREATED and DELETED
+ * and null for UPDATED, which does not change it. {@code expiresAt} is only set for CREATED
+ * messages that expire.
+ */
+public record MessageEvent(Type type, UUID uuid, UUID clientId, String content, Instant expiresAt) {
+
+    public static MessageEvent created(UUID uuid, UUID clientId, String content) {
+        return created(uuid, clientId, content, null);
+    }
+
+    public static MessageEvent created(UUID uuid, UUID clientId, String content, Instant expiresAt) {
+        return new MessageEvent(Type.CREATED, uuid, clientId, content, expiresAt);
+    }
+
+    public static MessageEvent updated(UUID uuid, String content) {
+        return new MessageEvent(Type.UPDATED, uuid, null, content, null);
+    }
+
+    public static MessageEvent deleted(UUID uuid, UUID clientId) {
+        return new MessageEvent(Type.DELETED, uuid, clientId, null, null);
+    }
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.message_store.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes expired messages in the background. Every batch of {@code batch-size} messages is its
+ * own transaction, so row locks are held only briefly, and the sweeper pauses between batches to
+ * leave the connection pool and the log store's write lock to foreground requests. Until they are
+ * swept, expired messages are already hidden from reads.
+ */
+@Log4j2
+@Component
+public class MessageExpirySweeper {
+
+    private final MessageService messageService;
+    private final MessageCounters messageCounters;
+    private final int batchSize;
+    private final long batchPauseMillis;
+    private final Counter purged;
+    private final ScheduledExecutorService sweeper;
+
+    public MessageExpirySweeper(MessageService messageService,
+                                MessageCounters messageCounters,
+                                MeterRegistry meterRegistry,
+                                @Value("${message.expiry.sweep-interval:1m}") Duration sweepInterval,
+                                @Value("${message.expiry.batch-size:500}") int batchSize,
+                                @Value("${message.expiry.batch-pause:20ms}") Duration batchPause) {
+        this.messageService = messageService;
+        this.messageCounters = messageCounters;
+        this.batchSize = batchSize;
+        this.batchPauseMillis = batchPause.toMillis();
+        this.purged = Counter.builder("message.expiry.purged")
+                .description("Expired messages deleted by the sweeper")
+                .register(meterRegistry);
+        if (sweepInterval.isZero()) {
+            this.sweeper = null;
+        } else {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "message-expiry-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = sweepInterval.toMillis();
+            this.sweeper.scheduleWithFixedDelay(this::sweepQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Deletes batches until one comes back short, then lets the counters read the next expiry.
+     *
+     * @return the number of messages deleted
+     */
+    public long sweep() throws InterruptedException {
+        long total = 0;
+        MessageService.PurgeResult batch;
+        do {
+            batch = messageService.purgeExpired(batchSize);
+            total += batch.deleted();
+            purged.increment(batch.deleted());
+            if (batch.moreLeft() && batchPauseMillis > 0) {
+                Thread.sleep(batchPauseMillis);
+            }
+        } while (batch.moreLeft());
+        messageCounters.refreshEarliestExpiry();
+        return total;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            long deleted = sweep();
+            if (deleted > 0) {
+                log.debug("Deleted {} expired messages", deleted);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Message expiry sweep failed", e);
+        }
+    }
+}
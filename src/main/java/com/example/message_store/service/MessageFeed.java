@@ -0,0 +1,368 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.MessageFeedItem;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Live feed of committed message writes for Server-Sent Events subscribers.
+ * <p>
+ * Writes go into a ring buffer of the last {@code capacity} events, numbered with consecutive ids.
+ * A subscriber is only a read position in the ring: an idle one holds no thread, and whenever there
+ * is something to send it is drained by one of a few dispatch threads, several events per flush. A
+ * subscriber that falls more than the ring behind is dropped; when it reconnects with
+ * {@code Last-Event-ID} it resumes where it stopped if that event is still in the ring, and
+ * otherwise gets a {@code reset} event telling it to catch up from the REST listing first.
+ * <p>
+ * A send that does not finish within {@code send-timeout}, to a client that stopped reading, drops
+ * that subscriber too. Its dispatch thread stays blocked until the servlet container's write
+ * timeout fails the write, so another dispatch thread is started in its place for that long, up
+ * to {@link #MAX_REPLACEMENT_THREADS} at a time. Past that limit stalled subscribers are dropped
+ * without a replacement; the emitter shares its lock with the blocked send, so it is completed
+ * once that send returns either way.
+ * <p>
+ * Ids start from the startup time in microseconds, so an id from before a restart is always older
+ * than the ring and leads to a reset rather than to a resume at the wrong place.
+ */
+@Log4j2
+@Component
+public class MessageFeed implements MeterBinder {
+
+    static final String RESET = "reset";
+    private static final int MAX_EVENTS_PER_FLUSH = 256;
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int STALLED = 2;
+    private static final int ABANDONED = 3;
+    static final int MAX_REPLACEMENT_THREADS = 4;
+
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final long firstId;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int dispatchThreads;
+    private final Object publishLock = new Object();
+    private volatile long nextId;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService timer;
+    private int stalledSends;
+
+    public MessageFeed(@Value("${message.feed.capacity:4096}") int capacity,
+                       @Value("${message.feed.dispatch-threads:4}") int dispatchThreads,
+                       @Value("${message.feed.heartbeat-interval:30s}") Duration heartbeatInterval,
+                       @Value("${message.feed.timeout:30m}") Duration timeout,
+                       @Value("${message.feed.send-timeout:10s}") Duration sendTimeout) {
+        if (capacity < 1 || dispatchThreads < 1) {
+            throw new IllegalArgumentException("Message feed needs a positive capacity and at least one dispatch thread");
+        }
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.firstId = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        this.nextId = firstId;
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.dispatchThreads = dispatchThreads;
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "message-feed-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-feed-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!heartbeatInterval.isZero()) {
+            long interval = heartbeatInterval.toMillis();
+            this.timer.scheduleWithFixedDelay(this::sendHeartbeats, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (!sendTimeout.isZero()) {
+            long interval = Math.max(sendTimeout.toMillis() / 4, 1);
+            this.timer.scheduleWithFixedDelay(this::dropStalledSubscribers, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Subscribes from the event after {@code lastEventId}, or from now on when it is null.
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        subscribe(emitter, lastEventId);
+        return emitter;
+    }
+
+    void subscribe(SseEmitter emitter, String lastEventId) {
+        long head = nextId;
+        long resumeAt = resumePosition(lastEventId, head);
+        Subscriber subscriber = new Subscriber(emitter, resumeAt < 0 ? head : resumeAt, resumeAt < 0);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        schedule(subscriber);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        synchronized (publishLock) {
+            long id = nextId;
+            ring.set(index(id), new Entry(id, event));
+            nextId = id + 1;
+        }
+        subscribers.forEach(this::schedule);
+    }
+
+    /**
+     * Id of the newest event, which a client that has seen everything sends as {@code Last-Event-ID}.
+     */
+    public long getLastEventId() {
+        return nextId - 1;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("message.feed.subscribers", subscribers, Set::size)
+                .description("Open live feed connections")
+                .register(registry);
+        FunctionCounter.builder("message.feed.dropped", dropped, AtomicLong::get)
+                .description("Live feed subscribers dropped for falling behind the ring buffer or stalling a send")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * Next id to send, or -1 when the client has to reset: its last event is no longer in the ring,
+     * is from before a restart, or is not an id at all.
+     */
+    private long resumePosition(String lastEventId, long head) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return head;
+        }
+        long resumeAt;
+        try {
+            resumeAt = Long.parseLong(lastEventId.trim()) + 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        long oldest = Math.max(firstId, head - ring.length());
+        return resumeAt >= oldest && resumeAt <= head ? resumeAt : -1;
+    }
+
+    private void sendHeartbeats() {
+        subscribers.forEach(subscriber -> {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        });
+    }
+
+    int getDispatchThreadCount() {
+        return dispatcher.getMaximumPoolSize();
+    }
+
+    /**
+     * Drops subscribers whose send has been blocked for longer than the send timeout, and starts a
+     * dispatch thread in place of each blocked one until its send returns, while under the limit.
+     */
+    private void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        subscribers.forEach(subscriber -> {
+            if (subscriber.sendState.get() != SENDING || now - subscriber.sendStartedNanos <= sendTimeoutNanos) {
+                return;
+            }
+            boolean replaced = addReplacementThread();
+            if (subscriber.sendState.compareAndSet(SENDING, replaced ? STALLED : ABANDONED)) {
+                dropped.incrementAndGet();
+                subscribers.remove(subscriber);
+                log.debug("Dropping live feed subscriber whose send stalled at event {}{}", subscriber.next,
+                        replaced ? "" : ", without a replacement dispatch thread");
+            } else if (replaced) {
+                resizeDispatcher(-1);
+            }
+        });
+    }
+
+    private synchronized boolean addReplacementThread() {
+        if (stalledSends >= MAX_REPLACEMENT_THREADS) {
+            return false;
+        }
+        resizeDispatcher(1);
+        return true;
+    }
+
+    private synchronized void resizeDispatcher(int stalledDelta) {
+        stalledSends += stalledDelta;
+        int size = dispatchThreads + stalledSends;
+        if (size > dispatcher.getMaximumPoolSize()) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            do {
+                Set<ResponseBodyEmitter.DataWithMediaType> batch = new LinkedHashSet<>();
+                if (subscriber.resetPending) {
+                    subscriber.resetPending = false;
+                    String resumeFrom = Long.toString(subscriber.next - 1);
+                    batch.addAll(SseEmitter.event().id(resumeFrom).name(RESET).data(resumeFrom).build());
+                }
+                if (subscriber.heartbeatDue) {
+                    subscriber.heartbeatDue = false;
+                    batch.addAll(SseEmitter.event().comment("heartbeat").build());
+                }
+                long head = nextId;
+                int events = 0;
+                while (subscriber.next < head) {
+                    Entry entry = ring.get(index(subscriber.next));
+                    if (entry == null || entry.id() != subscriber.next) {
+                        drop(subscriber);
+                        return;
+                    }
+                    batch.addAll(toSse(entry));
+                    subscriber.next++;
+                    if (++events == MAX_EVENTS_PER_FLUSH) {
+                        if (!send(subscriber, batch)) {
+                            return;
+                        }
+                        batch.clear();
+                        events = 0;
+                    }
+                }
+                if (!batch.isEmpty() && !send(subscriber, batch)) {
+                    return;
+                }
+                subscriber.scheduled.set(false);
+            } while (hasWork(subscriber) && subscriber.scheduled.compareAndSet(false, true));
+        } catch (IOException | IllegalStateException e) {
+            // The connection is gone or already completed; the emitter cleans up after itself.
+            subscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Sends {@code batch}, or returns false when the send outlasted the send timeout; the
+     * subscriber was then dropped meanwhile and its connection is ended here.
+     */
+    private boolean send(Subscriber subscriber, Set<ResponseBodyEmitter.DataWithMediaType> batch) throws IOException {
+        subscriber.sendStartedNanos = System.nanoTime();
+        subscriber.sendState.set(SENDING);
+        boolean stalled = false;
+        try {
+            subscriber.emitter.send(batch);
+        } finally {
+            if (!subscriber.sendState.compareAndSet(SENDING, IDLE)) {
+                stalled = true;
+                if (subscriber.sendState.get() == STALLED) {
+                    resizeDispatcher(-1);
+                }
+            }
+        }
+        if (stalled) {
+            subscriber.emitter.complete();
+        }
+        return !stalled;
+    }
+
+    private boolean hasWork(Subscriber subscriber) {
+        return subscriber.next < nextId || subscriber.heartbeatDue;
+    }
+
+    private void drop(Subscriber subscriber) {
+        dropped.incrementAndGet();
+        subscribers.remove(subscriber);
+        log.debug("Dropping live feed subscriber that fell behind at event {}", subscriber.next);
+        subscriber.emitter.complete();
+    }
+
+    private static Set<ResponseBodyEmitter.DataWithMediaType> toSse(Entry entry) {
+        MessageEvent event = entry.event();
+        return SseEmitter.event()
+                .id(Long.toString(entry.id()))
+                .name(event.type().name().toLowerCase(Locale.ROOT))
+                .data(new MessageFeedItem(event.uuid(), event.content()), MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private int index(long id) {
+        return (int) (id & mask);
+    }
+
+    private record Entry(long id, MessageEvent event) {
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger sendState = new AtomicInteger(IDLE);
+        private volatile long sendStartedNanos;
+        private long next;
+        private volatile boolean resetPending;
+        // Starts out due, as the response headers only go out with the first write.
+        private volatile boolean heartbeatDue = true;
+
+        private Subscriber(SseEmitter emitter, long next, boolean resetPending) {
+            this.emitter = emitter;
+            this.next = next;
+            this.resetPending = resetPending;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for single-message inserts. Concurrent {@link #save} calls are queued and a flusher
+ * thread commits them together in one transaction, as soon as {@code max-batch-size} messages are
+ * waiting or {@code max-wait} has passed since the first one arrived, so the commit cost is shared
+ * by the whole batch. Each caller blocks until its own message is committed and gets back the
+ * saved entity with its generated id, or the exception its insert caused.
+ * <p>
+ * If the batch transaction fails, its messages are inserted again one per transaction so a single
+ * bad row does not fail the other callers. Disabled by default ({@code message.group-commit.enabled}),
+ * in which case {@link #save} is a plain {@link MessageService#save}.
+ * <p>
+ * Callers must not hold a pooled connection while they wait (no surrounding transaction, no
+ * open-in-view), or enough waiting callers leave the flusher without one.
+ */
+@Log4j2
+@Component
+public class MessageInsertCoalescer implements SmartLifecycle {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MessageService messageService;
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingInsert> queue;
+    private final DistributionSummary batchSizes;
+    private final Timer flushes;
+    private final Counter fallbacks;
+    private volatile boolean running;
+    private Thread flusher;
+
+    public MessageInsertCoalescer(MessageService messageService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${message.group-commit.enabled:false}") boolean enabled,
+                                  @Value("${message.group-commit.max-wait:500us}") Duration maxWait,
+                                  @Value("${message.group-commit.max-batch-size:64}") int maxBatchSize,
+                                  @Value("${message.group-commit.queue-capacity:4096}") int queueCapacity) {
+        this.messageService = messageService;
+        this.enabled = enabled;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSizes = DistributionSummary.builder("message.group-commit.batch.size")
+                .description("Messages committed per group-commit transaction (coalescing factor)")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.flushes = Timer.builder("message.group-commit.flush")
+                .description("Time to commit one group-commit batch")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("message.group-commit.fallbacks")
+                .description("Batches that failed and were retried one message per transaction")
+                .register(meterRegistry);
+        Gauge.builder("message.group-commit.queue.size", queue, BlockingQueue::size)
+                .description("Inserts waiting for the next group commit")
+                .register(meterRegistry);
+    }
+
+    /**
+     * An insert queued after {@link #stop()} began, too late for the flusher and the final drain,
+     * is taken back out and saved directly.
+     */
+    public Message save(MessageCreateRequest messageCreate, Client client) {
+        if (!enabled || !running) {
+            return messageService.save(messageCreate, client);
+        }
+        PendingInsert pending = new PendingInsert(messageCreate.content(), messageCreate.expiresAt(Instant.now()), client,
+                new CompletableFuture<>());
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing message insert", e);
+        }
+        if (!running && queue.remove(pending)) {
+            return messageService.save(messageCreate, client);
+        }
+        try {
+            return pending.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "message-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops accepting new inserts into the queue and waits until the flusher committed the ones
+     * already queued. Runs after the web server stopped taking requests (lower phase).
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = flusher;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingInsert> stragglers = new ArrayList<>();
+        queue.drainTo(stragglers);
+        if (!stragglers.isEmpty()) {
+            flush(stragglers);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void flushLoop() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+                return;
+            } catch (RuntimeException e) {
+                log.error("Group commit flusher failed", e);
+                batch.forEach(pending -> pending.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingInsert> batch) {
+        batchSizes.record(batch.size());
+        Timer.Sample sample = Timer.start();
+        try {
+            List<Message> saved = messageService.insertAll(batch.stream().map(PendingInsert::toMessage).toList());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+        } catch (RuntimeException batchFailure) {
+            fallbacks.increment();
+            for (PendingInsert pending : batch) {
+                try {
+                    pending.result().complete(messageService.insertAll(List.of(pending.toMessage())).get(0));
+                } catch (RuntimeException e) {
+                    pending.result().completeExceptionally(e);
+                }
+            }
+        } finally {
+            sample.stop(flushes);
+        }
+    }
+
+    /**
+     * A fresh entity is built for every attempt: a failed transaction leaves the generated id on
+     * the entity it tried to persist.
+     */
+    private record PendingInsert(String content, Instant expiresAt, Client client, CompletableFuture<Message> result) {
+        Message toMessage() {
+            return new Message(content, client, expiresAt);
+        }
+    }
+}
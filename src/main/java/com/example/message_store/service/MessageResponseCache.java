@@ -0,0 +1,75 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of single-message responses (Caffeine, W-TinyLFU eviction).
+ * <p>
+ * Entries are invalidated after the writing transaction commits. Caffeine loads are atomic per
+ * key and an invalidation waits for an in-flight load of the same key, so a read that raced with
+ * the write cannot leave the pre-commit value behind.
+ */
+@Component
+public class MessageResponseCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final Cache<UUID, VersionedMessageResponse> responses;
+
+    public MessageResponseCache(@Value("${message.cache.enabled:true}") boolean enabled,
+                                @Value("${message.cache.max-size:10000}") long maxSize) {
+        this.enabled = enabled;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public VersionedMessageResponse get(UUID id, Function<UUID, VersionedMessageResponse> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return responses.get(id, loader);
+    }
+
+    /**
+     * The cached response, or null without loading it.
+     */
+    public VersionedMessageResponse getIfPresent(UUID id) {
+        return enabled ? responses.getIfPresent(id) : null;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        if (event.type() != MessageEvent.Type.CREATED) {
+            responses.invalidate(event.uuid());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, responses, "messageResponses");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getHitRatio() {
+        return responses.stats().hitRate();
+    }
+
+    public long getEvictionCount() {
+        return responses.stats().evictionCount();
+    }
+}
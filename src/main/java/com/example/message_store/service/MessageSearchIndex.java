@@ -0,0 +1,262 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageSearchHit;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.util.CursorCodec;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Lucene inverted index over message content, ranked with BM25.
+ * <p>
+ * The index is kept up to date from {@link MessageEvent}s after the writing transaction commits,
+ * and rebuilt from the database on startup or on demand. Ids written while a rebuild is running are
+ * re-read from the database once it finishes, so a row streamed before a concurrent change cannot
+ * win over that change.
+ * <p>
+ * Hits are ordered by score, then by id, and pages continue after the (score, id) of the last hit
+ * rather than at an offset, so concurrent writes do not shift later pages.
+ * <p>
+ * Only ids are stored in the index; the content of each batch of hits is read from the
+ * {@link MessageStore} with one query. Hits the store no longer returns, deleted or expired but
+ * not yet swept, are skipped and the search reads on, so they neither show up nor shorten a page.
+ */
+@Log4j2
+@Component
+public class MessageSearchIndex {
+
+    static final String ID = "uuid";
+    static final String CONTENT = "content";
+    private static final Sort RANKING = new Sort(SortField.FIELD_SCORE, new SortField(ID, SortField.Type.STRING));
+
+    private final MessageStore messageStore;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean rebuildOnStartup;
+    private final Directory directory;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private final Queue<UUID> changedDuringRebuild = new ConcurrentLinkedQueue<>();
+    private volatile boolean rebuilding;
+
+    public MessageSearchIndex(MessageStore messageStore,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${message.search.index-dir:}") String indexDir,
+                              @Value("${message.search.rebuild-on-startup:true}") boolean rebuildOnStartup) throws IOException {
+        this.messageStore = messageStore;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.directory = indexDir.isBlank() ? new ByteBuffersDirectory() : FSDirectory.open(Path.of(indexDir));
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            long indexed = rebuild();
+            log.info("Indexed {} messages for search", indexed);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageEvent(MessageEvent event) {
+        if (rebuilding) {
+            changedDuringRebuild.add(event.uuid());
+        }
+        if (event.type() == MessageEvent.Type.DELETED) {
+            remove(event.uuid());
+        } else {
+            index(event.uuid(), event.content());
+        }
+    }
+
+    /**
+     * Replaces the whole index with the current content of the database.
+     *
+     * @return the number of indexed messages
+     */
+    public synchronized long rebuild() {
+        rebuilding = true;
+        try {
+            writer.deleteAll();
+            long indexed = readOnlyTransaction.execute(status -> {
+                long count = 0;
+                try (Stream<MessageContent> messages = messageStore.streamAllContent()) {
+                    for (Iterator<MessageContent> iterator = messages.iterator(); iterator.hasNext(); count++) {
+                        MessageContent message = iterator.next();
+                        index(message.uuid(), message.content());
+                    }
+                }
+                return count;
+            });
+            UUID changedId;
+            while ((changedId = changedDuringRebuild.poll()) != null) {
+                UUID id = changedId;
+                messageStore.findContentById(id).ifPresentOrElse(
+                        message -> index(message.uuid(), message.content()),
+                        () -> remove(id));
+            }
+            writer.commit();
+            changed.set(true);
+            return indexed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Search index rebuild failed", e);
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    public CursorPageResponse<MessageSearchHit> search(String text, CursorCodec.RankedPosition after, int size) {
+        Query query = new QueryBuilder(analyzer).createBooleanQuery(CONTENT, text, BooleanClause.Occur.SHOULD);
+        if (query == null) {
+            return new CursorPageResponse<>(List.of(), 0, false, null);
+        }
+        try {
+            // During a rebuild searches keep using the last complete snapshot.
+            if (!rebuilding && changed.getAndSet(false)) {
+                searcherManager.maybeRefreshBlocking();
+            }
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                StoredFields storedFields = searcher.storedFields();
+                List<MessageSearchHit> hits = new ArrayList<>();
+                boolean hasNext = false;
+                ScoreDoc position = after == null ? null : fieldDoc(after, searcher);
+                TopDocs top;
+                do {
+                    top = searcher.searchAfter(position, query, size + 1, RANKING, true);
+                    List<UUID> ids = new ArrayList<>(top.scoreDocs.length);
+                    for (ScoreDoc scoreDoc : top.scoreDocs) {
+                        ids.add(UUID.fromString(storedFields.document(scoreDoc.doc).get(ID)));
+                    }
+                    Map<UUID, String> contents = new HashMap<>();
+                    messageStore.findContentByIds(ids).forEach(message -> contents.put(message.uuid(), message.content()));
+                    for (int i = 0; i < top.scoreDocs.length; i++) {
+                        ScoreDoc scoreDoc = top.scoreDocs[i];
+                        String content = contents.get(ids.get(i));
+                        if (content != null && hits.size() == size) {
+                            hasNext = true;
+                            break;
+                        }
+                        if (content != null) {
+                            hits.add(new MessageSearchHit(ids.get(i), content, scoreDoc.score));
+                        }
+                        position = scoreDoc;
+                    }
+                } while (!hasNext && top.scoreDocs.length == size + 1);
+                MessageSearchHit last = hits.isEmpty() ? null : hits.get(hits.size() - 1);
+                return new CursorPageResponse<>(hits, hits.size(), hasNext,
+                        hasNext ? CursorCodec.encode(last.score(), last.uuid()) : null);
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Search failed", e);
+        }
+    }
+
+    public long getDocumentCount() {
+        return writer.getDocStats().numDocs;
+    }
+
+    public boolean isRebuilding() {
+        return rebuilding;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    private void index(UUID id, String content) {
+        Document document = new Document();
+        document.add(new StringField(ID, id.toString(), Field.Store.YES));
+        document.add(new SortedDocValuesField(ID, sortKey(id)));
+        document.add(new TextField(CONTENT, content, Field.Store.NO));
+        try {
+            writer.updateDocument(new Term(ID, id.toString()), document);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Indexing message " + id + " failed", e);
+        }
+        changed.set(true);
+    }
+
+    private void remove(UUID id) {
+        try {
+            writer.deleteDocuments(new Term(ID, id.toString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Removing message " + id + " from the index failed", e);
+        }
+        changed.set(true);
+    }
+
+    /**
+     * Lucene only skips a hit equal to {@code after} on every sort field when its doc id is not
+     * greater than {@code after.doc}; ids are unique, so the last doc id skips exactly that hit.
+     */
+    private static FieldDoc fieldDoc(CursorCodec.RankedPosition after, IndexSearcher searcher) {
+        int lastDoc = Math.max(searcher.getIndexReader().maxDoc() - 1, 0);
+        return new FieldDoc(lastDoc, after.score(), new Object[]{after.score(), sortKey(after.uuid())});
+    }
+
+    private static BytesRef sortKey(UUID id) {
+        return new BytesRef(ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array());
+    }
+}
@@ -1,48 +1,273 @@
 package com.example.message_store.service;
 
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageContent;
 import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.MessageSearchHit;
+import com.example.message_store.dto.MessageStatsResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.exceptions.MessageAccessDeniedException;
 import com.example.message_store.exceptions.MessageNotFoundException;
+import com.example.message_store.exceptions.PreconditionFailedException;
 import com.example.message_store.model.Client;
 import com.example.message_store.model.Message;
-import com.example.message_store.repository.MessageRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.util.CursorCodec;
+import jakarta.persistence.EntityManager;
 import lombok.AllArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
 public class MessageService {
 
-    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
+    private final MessageResponseCache messageResponseCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageContentCompressor messageContentCompressor;
+    private final MessageCounters messageCounters;
+    private final ClientService clientService;
 
-    public Page<Message> getAll(Pageable pageable) {
-        return messageRepository.findAll(pageable);
+    /**
+     * Read endpoints project straight into DTOs: no managed entities, snapshots or client joins.
+     * The page total comes from the maintained counters while they are exact, that is while no
+     * stored message has expired, so no count query runs; otherwise it is counted with the same
+     * expiry filter as the content.
+     */
+    @Transactional(readOnly = true)
+    public Page<MessageResponse> getAll(Pageable pageable) {
+        if (pageable.isUnpaged() || !messageCounters.isTotalExact(Instant.now())) {
+            return messageStore.findAllResponses(pageable);
+        }
+        return PageableExecutionUtils.getPage(messageStore.findResponses(pageable), pageable, messageCounters::getTotal);
+    }
+
+    public MessageStatsResponse getStats(int clientLimit) {
+        return messageCounters.getStats(clientLimit);
+    }
+
+    /**
+     * Keyset page ordered by id: every page is a bounded index range scan starting after
+     * {@code after} (or at the beginning when it is null), with no count query.
+     */
+    @Transactional(readOnly = true)
+    public Slice<MessageContent> getAfter(UUID after, int size) {
+        Pageable firstPage = PageRequest.of(0, size);
+        if (after == null) {
+            return messageStore.findContentByOrderByUuidAsc(firstPage);
+        }
+        return messageStore.findContentByUuidGreaterThanOrderByUuidAsc(after, firstPage);
+    }
+
+    /**
+     * Newest-first page of one client's messages, continuing after {@code after} when it is set.
+     * Each page is a range scan of the {@code (client_id, created_at)} index.
+     */
+    @Transactional(readOnly = true)
+    public Slice<MessageListItem> getRecentByClient(UUID clientId, CursorCodec.TimedPosition after, int size) {
+        Pageable firstPage = PageRequest.of(0, size);
+        if (after == null) {
+            return messageStore.findRecentByClientId(clientId, firstPage);
+        }
+        return messageStore.findRecentByClientIdBefore(clientId, after.createdAt(), after.uuid(), firstPage);
     }
 
     public Message getById(UUID id) {
-        return messageRepository.findById(id).orElseThrow(() -> new MessageNotFoundException("Message not found with id: " + id));
+        return messageStore.findById(id).orElseThrow(() -> new MessageNotFoundException("Message not found with id: " + id));
+    }
+
+    /**
+     * Not transactional itself, so a cache hit does not check out a connection; a miss runs one
+     * projection query in the repository's read-only transaction.
+     */
+    public VersionedMessageResponse getResponseById(UUID id) {
+        VersionedMessageResponse response = messageResponseCache.get(id, key -> messageStore.findResponseById(key)
+                .orElseThrow(() -> new MessageNotFoundException("Message not found with id: " + key)));
+        if (response.isExpired(Instant.now())) {
+            throw new MessageNotFoundException("Message not found with id: " + id);
+        }
+        return response;
+    }
+
+    /**
+     * Current version of a message, for conditional requests: taken from the response cache when
+     * it holds the message, otherwise read alone without loading the content.
+     */
+    public long getVersion(UUID id) {
+        VersionedMessageResponse cached = messageResponseCache.getIfPresent(id);
+        if (cached != null && !cached.isExpired(Instant.now())) {
+            return cached.version();
+        }
+        return messageStore.findVersionById(id).orElseThrow(() -> new MessageNotFoundException("Message not found with id: " + id));
+    }
+
+    public CursorPageResponse<MessageSearchHit> search(String text, CursorCodec.RankedPosition after, int size) {
+        return messageSearchIndex.search(text, after, size);
+    }
+
+    /**
+     * Streams every message (or every message of one client) to {@code sink} in id order, holding
+     * at most one fetch-size worth of rows: the persistence context is cleared after each chunk so
+     * exported entities can be collected while the cursor is still open.
+     */
+    @Transactional(readOnly = true)
+    public long export(String username, Consumer<Message> sink) {
+        long exported = 0;
+        try (Stream<Message> messages = username == null
+                ? messageStore.streamAll()
+                : messageStore.streamAllByClientUsername(username)) {
+            Iterator<Message> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                sink.accept(iterator.next());
+                if (++exported % MessageStore.EXPORT_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return exported;
     }
 
+    /**
+     * {@code client} is null for a token whose subject is not a known client; like
+     * {@link #insertAll}, the message is then stored without an owner.
+     */
+    @Transactional
     public Message save(MessageCreateRequest messageCreate, Client client) {
-        return messageRepository.save(new Message(
+        Message message = messageStore.save(messageContentCompressor.compress(new Message(
                 messageCreate.content(),
-                client
-        ));
+                client,
+                messageCreate.expiresAt(Instant.now())
+        )));
+        UUID clientId = client == null ? null : client.getUuid();
+        eventPublisher.publishEvent(MessageEvent.created(message.getUuid(), clientId, messageCreate.content(), message.getExpiresAt()));
+        return message;
     }
 
-    public Message update(UUID id, MessageCreateRequest newMessage) {
-        Message existingMessage = messageRepository.findById(id).orElse(null);
-        if (existingMessage == null) {
-            throw new MessageNotFoundException("Message not found with id: " + id);
+    /**
+     * Inserts all messages in one transaction; with {@code hibernate.jdbc.batch_size} set the
+     * INSERTs are sent to the database as JDBC batches. Results keep the order of the requests.
+     */
+    @Transactional
+    public List<Message> saveAll(List<MessageCreateRequest> messageCreates, Client client) {
+        Instant now = Instant.now();
+        return insertAll(messageCreates.stream()
+                .map(messageCreate -> new Message(messageCreate.content(), client, messageCreate.expiresAt(now)))
+                .toList());
+    }
+
+    /**
+     * Inserts new messages, possibly of different clients, in one transaction.
+     */
+    @Transactional
+    public List<Message> insertAll(List<Message> messages) {
+        List<String> contents = messages.stream().map(Message::getContent).toList();
+        List<Message> saved = messageStore.saveAll(messages.stream().map(messageContentCompressor::compress).toList());
+        for (int i = 0; i < saved.size(); i++) {
+            Message message = saved.get(i);
+            UUID clientId = message.getClient() == null ? null : message.getClient().getUuid();
+            eventPublisher.publishEvent(MessageEvent.created(message.getUuid(), clientId, contents.get(i), message.getExpiresAt()));
         }
-        existingMessage.setContent(newMessage.content());
-        return messageRepository.save(existingMessage);
+        return saved;
     }
 
-    public void deleteById(UUID id) {
-        messageRepository.deleteById(id);
+    @Transactional
+    public long update(UUID id, MessageCreateRequest newMessage, String username) {
+        return update(id, newMessage, username, null);
+    }
+
+    /**
+     * Replaces the content if the message still has {@code expectedVersion} (any version when it
+     * is null). The version check is part of the UPDATE, so of two writers that read the same
+     * version only the first succeeds and nothing is read back before writing.
+     *
+     * @return the version the update wrote
+     */
+    @Transactional
+    public long update(UUID id, MessageCreateRequest newMessage, String username, Long expectedVersion) {
+        byte[] deflated = messageContentCompressor.deflate(newMessage.content());
+        String plain = deflated == null ? newMessage.content() : null;
+        long version = messageStore.updateContentIfOwner(id, username, plain, deflated, expectedVersion)
+                .orElseThrow(() -> expectedVersion == null ? notModifiable(id) : notModifiable(id, expectedVersion));
+        eventPublisher.publishEvent(MessageEvent.updated(id, newMessage.content()));
+        return version;
+    }
+
+    @Transactional
+    public void deleteById(UUID id, String username) {
+        if (messageStore.deleteIfOwner(id, username) == 0) {
+            throw notModifiable(id);
+        }
+        eventPublisher.publishEvent(MessageEvent.deleted(id, clientService.getClientId(username)));
+    }
+
+    /**
+     * Deletes up to {@code batchSize} expired messages with one statement in one short transaction
+     * and announces each deletion, so caches, counters and the search index drop them too. A
+     * message its owner deleted meanwhile is neither counted nor announced again.
+     */
+    @Transactional
+    public PurgeResult purgeExpired(int batchSize) {
+        Instant now = Instant.now();
+        List<MessageKey> expired = messageStore.findExpired(now, PageRequest.of(0, batchSize));
+        if (expired.isEmpty()) {
+            return new PurgeResult(0, false);
+        }
+        Set<UUID> deleted = new HashSet<>(messageStore.deleteExpired(expired.stream().map(MessageKey::uuid).toList(), now));
+        for (MessageKey message : expired) {
+            if (deleted.contains(message.uuid())) {
+                eventPublisher.publishEvent(MessageEvent.deleted(message.uuid(), message.clientId()));
+            }
+        }
+        return new PurgeResult(deleted.size(), expired.size() == batchSize);
+    }
+
+    /**
+     * @param deleted  the number of expired messages deleted
+     * @param moreLeft whether the batch was full, so more expired messages may be left
+     */
+    public record PurgeResult(int deleted, boolean moreLeft) {
+    }
+
+    /**
+     * The ownership check is part of the UPDATE/DELETE statement itself, so a missing row and a
+     * row owned by someone else are only told apart here, once nothing was affected.
+     */
+    private RuntimeException notModifiable(UUID id) {
+        if (messageStore.existsById(id)) {
+            return new MessageAccessDeniedException("Not allowed to manage message with id: " + id);
+        }
+        return new MessageNotFoundException("Message not found with id: " + id);
+    }
+
+    private RuntimeException notModifiable(UUID id, long expectedVersion) {
+        Long version = messageStore.findVersionById(id).orElse(null);
+        if (version == null) {
+            return new MessageNotFoundException("Message not found with id: " + id);
+        }
+        if (version != expectedVersion) {
+            return new PreconditionFailedException("Message " + id + " was modified, its current version is " + version);
+        }
+        return new MessageAccessDeniedException("Not allowed to manage message with id: " + id);
     }
 }
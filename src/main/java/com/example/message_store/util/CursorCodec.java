@@ -0,0 +1,89 @@
+package com.example.message_store.util;
+
+import com.example.message_store.exceptions.InvalidCursorException;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Encodes keyset positions as opaque, URL-safe continuation tokens.
+ */
+public final class CursorCodec {
+
+    private CursorCodec() {
+    }
+
+    public static String encode(UUID lastSeen) {
+        ByteBuffer buffer = ByteBuffer.allocate(16)
+                .putLong(lastSeen.getMostSignificantBits())
+                .putLong(lastSeen.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static UUID decodeUuid(String cursor) {
+        ByteBuffer buffer = decode(cursor, 16);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Position in a relevance-ranked result: the score of the last hit plus its id as tie-breaker.
+     */
+    public static String encode(float lastScore, UUID lastSeen) {
+        ByteBuffer buffer = ByteBuffer.allocate(20)
+                .putFloat(lastScore)
+                .putLong(lastSeen.getMostSignificantBits())
+                .putLong(lastSeen.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static RankedPosition decodeRanked(String cursor) {
+        ByteBuffer buffer = decode(cursor, 20);
+        return new RankedPosition(buffer.getFloat(), new UUID(buffer.getLong(), buffer.getLong()));
+    }
+
+    /**
+     * Position in a recency-ordered listing: the creation time of the last message plus its id as
+     * tie-breaker.
+     */
+    public static String encode(Instant lastCreatedAt, UUID lastSeen) {
+        ByteBuffer buffer = ByteBuffer.allocate(28)
+                .putLong(lastCreatedAt.getEpochSecond())
+                .putInt(lastCreatedAt.getNano())
+                .putLong(lastSeen.getMostSignificantBits())
+                .putLong(lastSeen.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static TimedPosition decodeTimed(String cursor) {
+        ByteBuffer buffer = decode(cursor, 28);
+        Instant createdAt;
+        try {
+            createdAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        } catch (DateTimeException e) {
+            throw new InvalidCursorException("Malformed cursor: " + cursor);
+        }
+        return new TimedPosition(createdAt, new UUID(buffer.getLong(), buffer.getLong()));
+    }
+
+    private static ByteBuffer decode(String cursor, int length) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Malformed cursor: " + cursor);
+        }
+        if (bytes.length != length) {
+            throw new InvalidCursorException("Malformed cursor: " + cursor);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    public record RankedPosition(float score, UUID uuid) {
+    }
+
+    public record TimedPosition(Instant createdAt, UUID uuid) {
+    }
+}
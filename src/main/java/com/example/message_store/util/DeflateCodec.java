@@ -0,0 +1,61 @@
+package com.example.message_store.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate (zlib format) of UTF-8 text, used to store large message bodies compressed.
+ */
+public final class DeflateCodec {
+
+    private DeflateCodec() {
+    }
+
+    public static byte[] deflate(String text, int level) {
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The text of a message stored as two columns, of which at most one is non-null.
+     */
+    public static String plainOrInflated(String plain, byte[] deflated) {
+        return plain != null || deflated == null ? plain : inflate(deflated);
+    }
+
+    public static String inflate(byte[] deflated) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(deflated.length * 4);
+            byte[] chunk = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated deflate stream");
+                }
+                output.write(chunk, 0, length);
+            }
+            return output.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt deflate stream", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
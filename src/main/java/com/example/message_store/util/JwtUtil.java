@@ -1,36 +1,121 @@
 package com.example.message_store.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
-import lombok.extern.log4j.Log4j2;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
-@Log4j2
 @Component
-public class JwtUtil {
+public class JwtUtil implements MeterBinder {
 
-    @Value("${jwt.secret:secret-signature-verification-key}")
-    private String secret;
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
 
-    private SecretKey getSecretKey() {
-        log.error("secret: ".concat(secret));
-        System.out.println("secret: ".concat(secret));
+    private final JwtParser parser;
+    private final Cache<String, VerifiedToken> verifiedTokens;
 
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    public JwtUtil(@Value("${jwt.secret:secret-signature-verification-key}") String secret,
+                   @Value("${jwt.cache.max-size:10000}") long cacheMaxSize) {
+        this.parser = Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)))
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfter(new ExpireAtTokenExpiration())
+                .recordStats()
+                .build();
     }
 
+    /**
+     * Returns the subject of a signed token; see {@link #verify}.
+     */
     public String extractUsername(String token) {
-        Claims userClaims = Jwts.parser()
-                .verifyWith(getSecretKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        return userClaims.getSubject();
+        return verify(token).subject();
     }
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, verifiedTokens, "jwtVerifiedTokens");
+    }
+
+    public long getCacheHits() {
+        return verifiedTokens.stats().hitCount();
+    }
+
+    public long getCacheMisses() {
+        return verifiedTokens.stats().missCount();
+    }
+
+    /**
+     * Verifies a signed token and returns its subject and {@code role} claim together. Tokens that
+     * were already verified are served from a cache keyed by the token digest until their
+     * {@code exp} claim, so only the first occurrence of a token pays for signature verification.
+     */
+    public VerifiedToken verify(String token) {
+        String digest = digest(token);
+        VerifiedToken verified = verifiedTokens.getIfPresent(digest);
+        if (verified != null) {
+            return verified;
+        }
+
+        Claims userClaims = parser.parseSignedClaims(token).getPayload();
+        Date expiration = userClaims.getExpiration();
+        verified = new VerifiedToken(userClaims.getSubject(), userClaims.get("role", String.class),
+                expiration == null ? 0 : expiration.getTime());
+        // Tokens without an expiration would never leave the cache on their own, so they are always re-verified.
+        if (expiration != null) {
+            verifiedTokens.put(digest, verified);
+        }
+        return verified;
+    }
+
+    private static String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * @param role            the {@code role} claim, or null when the token has none
+     * @param expiresAtMillis the {@code exp} claim, or 0 when the token has none
+     */
+    public record VerifiedToken(String subject, String role, long expiresAtMillis) {
+    }
+
+    private static final class ExpireAtTokenExpiration implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.expiresAtMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainingMillis, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
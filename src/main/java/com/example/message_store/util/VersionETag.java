@@ -0,0 +1,35 @@
+package com.example.message_store.util;
+
+import com.example.message_store.exceptions.PreconditionFailedException;
+
+/**
+ * Strong entity tags derived from the version of a message, e.g. {@code "3"}.
+ */
+public final class VersionETag {
+
+    private VersionETag() {
+    }
+
+    public static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * The version an {@code If-Match} header asks for, or null for {@code *} (any current version).
+     * If-Match uses strong comparison, so weak, foreign or multiple tags can never match.
+     */
+    public static Long parseIfMatch(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.equals("*")) {
+            return null;
+        }
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                return Long.parseLong(tag.substring(1, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // not one of our tags
+            }
+        }
+        throw new PreconditionFailedException("If-Match " + ifMatch + " does not match the current version");
+    }
+}
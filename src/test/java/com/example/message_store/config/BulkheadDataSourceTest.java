@@ -0,0 +1,64 @@
+package com.example.message_store.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BulkheadDataSourceTest {
+
+    @Mock
+    private DataSource targetDataSource;
+
+    @Mock
+    private Connection connection;
+
+    private BulkheadDataSource bulkhead;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(targetDataSource.getConnection()).thenReturn(connection);
+        bulkhead = new BulkheadDataSource(targetDataSource, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_holdsPermitUntilClose() throws SQLException {
+        Connection first = bulkhead.getConnection();
+        Connection second = bulkhead.getConnection();
+
+        assertEquals(0, bulkhead.getAvailablePermits());
+        first.close();
+        first.close();
+        assertEquals(1, bulkhead.getAvailablePermits());
+        second.close();
+        assertEquals(2, bulkhead.getAvailablePermits());
+        verify(connection, times(3)).close();
+    }
+
+    @Test
+    void getConnection_throwsTransientException_whenBulkheadFull() throws SQLException {
+        bulkhead.getConnection();
+        bulkhead.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, () -> bulkhead.getConnection());
+        verify(targetDataSource, times(2)).getConnection();
+    }
+
+    @Test
+    void getConnection_releasesPermit_whenTargetFails() throws SQLException {
+        when(targetDataSource.getConnection()).thenThrow(new SQLException("pool exhausted"));
+
+        assertThrows(SQLException.class, () -> bulkhead.getConnection());
+        assertEquals(2, bulkhead.getAvailablePermits());
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.message_store.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+    private ClientRateLimiter limiter(int maxClients) {
+        return new ClientRateLimiter(ClientRateLimiter.Limit.of(10, 3), ClientRateLimiter.Limit.of(1, 2), maxClients, clock::get, Duration.ZERO);
+    }
+
+    @Test
+    void tryAcquire_admitsBurstThenRefillsAtRate() {
+        ClientRateLimiter limiter = limiter(100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("client1", false));
+        }
+        assertEquals(SECOND / 10, limiter.tryAcquire("client1", false));
+        assertEquals(SECOND / 10, limiter.tryAcquire("client1", false));
+
+        clock.addAndGet(SECOND / 10);
+        assertEquals(0, limiter.tryAcquire("client1", false));
+        assertTrue(limiter.tryAcquire("client1", false) > 0);
+
+        clock.addAndGet(10 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("client1", false));
+        }
+    }
+
+    @Test
+    void tryAcquire_keepsReadsWritesAndClientsApart() {
+        ClientRateLimiter limiter = limiter(100);
+
+        assertEquals(0, limiter.tryAcquire("client1", true));
+        assertEquals(0, limiter.tryAcquire("client1", true));
+        assertEquals(SECOND, limiter.tryAcquire("client1", true));
+
+        assertEquals(0, limiter.tryAcquire("client1", false));
+        assertEquals(0, limiter.tryAcquire("client2", true));
+        assertEquals(2, limiter.getTrackedClients());
+    }
+
+    @Test
+    void tryAcquire_concurrentCallersShareOneBurst() throws Exception {
+        ClientRateLimiter limiter = new ClientRateLimiter(ClientRateLimiter.Limit.of(1, 100), ClientRateLimiter.Limit.of(1, 1), 100, clock::get, Duration.ZERO);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> admitted = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                admitted.add(executor.submit(() -> {
+                    start.await();
+                    int count = 0;
+                    for (int i = 0; i < 50; i++) {
+                        count += limiter.tryAcquire("client1", false) == 0 ? 1 : 0;
+                    }
+                    return count;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> future : admitted) {
+                total += future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(100, total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void evictIdle_dropsOnlyClientsWithFullBuckets() {
+        ClientRateLimiter limiter = limiter(100);
+        limiter.tryAcquire("reader", false);
+        limiter.tryAcquire("writer", true);
+
+        clock.addAndGet(SECOND / 2);
+        limiter.evictIdle();
+        assertEquals(1, limiter.getTrackedClients());
+
+        clock.addAndGet(SECOND / 2);
+        limiter.evictIdle();
+        assertEquals(0, limiter.getTrackedClients());
+    }
+
+    @Test
+    void limit_rejectsNonPositiveRateOrBurst() {
+        assertThrows(IllegalArgumentException.class, () -> ClientRateLimiter.Limit.of(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> ClientRateLimiter.Limit.of(10, 0));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.message_store.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcMetricsListenerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcMetricsListener.endRequest();
+    }
+
+    @Test
+    void afterQuery_recordsStatementTimerAndRequestTotals() {
+        JdbcMetricsListener listener = listener(Duration.ofSeconds(10));
+        JdbcMetricsListener.RequestStatements request = JdbcMetricsListener.beginRequest();
+
+        execute(listener, "select m1_0.uuid from messages m1_0 where m1_0.uuid=?");
+        execute(listener, "  UPDATE messages set content=? where uuid=?");
+
+        assertEquals(2, request.getCount());
+        assertEquals(1, meterRegistry.get("jdbc.statements").tag("type", "select").timer().count());
+        assertEquals(1, meterRegistry.get("jdbc.statements").tag("type", "update").timer().count());
+        assertNull(meterRegistry.find("jdbc.statements.slow").counter());
+    }
+
+    @Test
+    void afterQuery_countsSlowStatements() {
+        JdbcMetricsListener listener = listener(Duration.ZERO);
+
+        execute(listener, "select 1");
+
+        assertEquals(1, meterRegistry.get("jdbc.statements.slow").counter().count());
+    }
+
+    @Test
+    void afterQuery_outsideRequest_onlyRecordsTimer() {
+        JdbcMetricsListener listener = listener(Duration.ofSeconds(10));
+
+        execute(listener, "insert into messages values (?, ?, ?)");
+
+        assertEquals(1, meterRegistry.get("jdbc.statements").tag("type", "insert").timer().count());
+    }
+
+    private JdbcMetricsListener listener(Duration slowQueryThreshold) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry));
+        return new JdbcMetricsListener(beanFactory.getBeanProvider(MeterRegistry.class), slowQueryThreshold, 0.0);
+    }
+
+    private static void execute(JdbcMetricsListener listener, String query) {
+        ExecutionInfo execInfo = new ExecutionInfo();
+        execInfo.setSuccess(true);
+        List<QueryInfo> queries = List.of(new QueryInfo(query));
+        listener.beforeQuery(execInfo, queries);
+        listener.afterQuery(execInfo, queries);
+    }
+}
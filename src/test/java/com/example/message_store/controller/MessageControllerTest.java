@@ -1,12 +1,26 @@
 package com.example.message_store.controller;
 
-import com.example.message_store.config.security.MessageSecurity;
+import com.example.message_store.config.ClientRateLimiter;
 import com.example.message_store.config.security.SecurityConfig;
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageContent;
 import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.MessageSearchHit;
+import com.example.message_store.dto.MessageStatsResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.exceptions.MessageAccessDeniedException;
+import com.example.message_store.exceptions.MessageNotFoundException;
+import com.example.message_store.exceptions.PreconditionFailedException;
 import com.example.message_store.model.Client;
 import com.example.message_store.model.Message;
 import com.example.message_store.service.ClientService;
+import com.example.message_store.service.MessageFeed;
+import com.example.message_store.service.MessageInsertCoalescer;
 import com.example.message_store.service.MessageService;
+import com.example.message_store.util.CursorCodec;
 import com.example.message_store.util.JwtUtil;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +31,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -24,11 +39,14 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -47,12 +65,18 @@ class MessageControllerTest {
     @MockitoBean
     private ClientService clientService;
 
-    @MockitoBean(name = "messageSecurity")
-    private MessageSecurity messageSecurity;
+    @MockitoBean
+    private MessageInsertCoalescer messageInsertCoalescer;
+
+    @MockitoBean
+    private MessageFeed messageFeed;
 
     @MockitoBean
     private JwtUtil jwtUtil;
 
+    @MockitoBean
+    private ClientRateLimiter clientRateLimiter;
+
     private static final String CLIENT_JWT_TOKEN = "generate_token_for_client_1";
 
     @Test
@@ -60,22 +84,58 @@ class MessageControllerTest {
     void getById_returnsMessage_whenMessageExists() throws Exception {
         UUID messageId = UUID.randomUUID();
 
-        Message message = Message.builder().uuid(messageId).content("Message 1").build();
-
-        Mockito.when(messageService.getById(messageId)).thenReturn(message);
+        Mockito.when(messageService.getResponseById(messageId)).thenReturn(new VersionedMessageResponse(new MessageResponse("Message 1"), 4));
 
         mockMvc.perform(get("/api/v1/messages/{id}", messageId))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
                 .andExpect(jsonPath("$.content").value(("Message 1")));
+        verify(messageService, never()).getVersion(messageId);
     }
 
     @Test
     @WithMockUser(username = "client1")
-    void getAll_returnsMessagesPage_whenMessagesExist() throws Exception {
-        Message msg = Message.builder().uuid(UUID.randomUUID()).content("Message 1").build();
+    void getById_returnsNotModified_withoutLoadingContent_whenETagMatches() throws Exception {
+        UUID messageId = UUID.randomUUID();
+        Mockito.when(messageService.getVersion(messageId)).thenReturn(4L);
 
-        Page<Message> page = new PageImpl<>(List.of(msg));
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client1");
+        mockMvc.perform(get("/api/v1/messages/{id}", messageId).header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(messageService, never()).getResponseById(messageId);
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getById_returnsMessage_whenETagIsOutdated() throws Exception {
+        UUID messageId = UUID.randomUUID();
+        Mockito.when(messageService.getVersion(messageId)).thenReturn(5L);
+        Mockito.when(messageService.getResponseById(messageId)).thenReturn(new VersionedMessageResponse(new MessageResponse("Message 1"), 5));
+
+        mockMvc.perform(get("/api/v1/messages/{id}", messageId).header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getById_returnsTooManyRequests_whenClientIsOverItsReadLimit() throws Exception {
+        UUID messageId = UUID.randomUUID();
+        Mockito.when(clientRateLimiter.tryAcquire("client1", false)).thenReturn(1_500_000_000L);
+
+        mockMvc.perform(get("/api/v1/messages/{id}", messageId))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                .andExpect(jsonPath("$.status").value(429))
+                .andExpect(jsonPath("$.path").value("/api/v1/messages/" + messageId));
+        verify(messageService, never()).getResponseById(messageId);
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getAll_returnsMessagesPage_whenMessagesExist() throws Exception {
+        Page<MessageResponse> page = new PageImpl<>(List.of(new MessageResponse("Message 1")));
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
         Mockito.when(messageService.getAll(any(PageRequest.class))).thenReturn(page);
 
         mockMvc.perform(get("/api/v1/messages/").param("page", "0").param("size", "10"))
@@ -83,14 +143,105 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.content[0].content").value("Message 1"));
     }
 
+    @Test
+    @WithMockUser(username = "client1")
+    void getStats_returnsCountsAndClampsClientLimit() throws Exception {
+        UUID clientId = UUID.randomUUID();
+        Mockito.when(messageService.getStats(1000))
+                .thenReturn(new MessageStatsResponse(7, List.of(new ClientMessageCount(clientId, 5))));
+
+        mockMvc.perform(get("/api/v1/messages/stats").param("clients", "5000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(7))
+                .andExpect(jsonPath("$.clients[0].clientId").value(clientId.toString()))
+                .andExpect(jsonPath("$.clients[0].count").value(5));
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getAllByCursor_returnsSliceWithNextCursor_whenMoreMessagesExist() throws Exception {
+        UUID lastId = UUID.randomUUID();
+        MessageContent msg = new MessageContent(lastId, "Message 1");
+
+        Mockito.when(messageService.getAfter(null, 1)).thenReturn(new SliceImpl<>(List.of(msg), PageRequest.of(0, 1), true));
+
+        mockMvc.perform(get("/api/v1/messages/").param("cursor", "").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].content").value("Message 1"))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value(CursorCodec.encode(lastId)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getAllByCursor_returnsBadRequest_whenCursorMalformed() throws Exception {
+        mockMvc.perform(get("/api/v1/messages/").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getMine_returnsNewestFirstPageWithTimedCursor() throws Exception {
+        Client client = new Client();
+        client.setUuid(UUID.randomUUID());
+        UUID lastId = UUID.randomUUID();
+        Instant createdAt = Instant.parse("2026-03-01T12:30:00.123456Z");
+        CursorCodec.TimedPosition after = new CursorCodec.TimedPosition(Instant.parse("2026-03-02T08:00:00Z"), UUID.randomUUID());
+        Mockito.when(clientService.getClientReference("client1")).thenReturn(client);
+        Mockito.when(messageService.getRecentByClient(client.getUuid(), after, 1)).thenReturn(
+                new SliceImpl<>(List.of(new MessageListItem(lastId, "Message 1", createdAt)), PageRequest.of(0, 1), true));
+
+        mockMvc.perform(get("/api/v1/messages/mine")
+                        .param("size", "1")
+                        .param("cursor", CursorCodec.encode(after.createdAt(), after.uuid())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].content").value("Message 1"))
+                .andExpect(jsonPath("$.content[0].createdAt").exists())
+                .andExpect(jsonPath("$.nextCursor").value(CursorCodec.encode(createdAt, lastId)));
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void getMine_returnsBadRequest_whenCursorMalformed() throws Exception {
+        mockMvc.perform(get("/api/v1/messages/mine").param("cursor", CursorCodec.encode(UUID.randomUUID())))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void search_returnsRankedHitsWithNextCursor() throws Exception {
+        UUID hitId = UUID.randomUUID();
+        String nextCursor = CursorCodec.encode(1.5f, hitId);
+        CursorCodec.RankedPosition after = new CursorCodec.RankedPosition(2.0f, UUID.randomUUID());
+        Mockito.when(messageService.search("budget", after, 1)).thenReturn(
+                new CursorPageResponse<>(List.of(new MessageSearchHit(hitId, "budget report", 1.5f)), 1, true, nextCursor));
+
+        mockMvc.perform(get("/api/v1/messages/search")
+                        .param("q", "budget")
+                        .param("size", "1")
+                        .param("cursor", CursorCodec.encode(after.score(), after.uuid())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].uuid").value(hitId.toString()))
+                .andExpect(jsonPath("$.content[0].score").value(1.5))
+                .andExpect(jsonPath("$.nextCursor").value(nextCursor));
+    }
+
+    @Test
+    @WithMockUser(username = "client1")
+    void search_returnsBadRequest_whenQueryBlank() throws Exception {
+        mockMvc.perform(get("/api/v1/messages/search").param("q", " "))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void createMessage_returnsCreated_whenValidRequest() throws Exception {
         Client client = Client.builder().uuid(UUID.randomUUID()).username("client1").build();
         Message msg = Message.builder().uuid(UUID.randomUUID()).content("Message for client1").build();
 
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client1");
-        Mockito.when(clientService.getClientByUsername("client1")).thenReturn(client);
-        Mockito.when(messageService.save(any(MessageCreateRequest.class), eq(client))).thenReturn(msg);
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.when(clientService.getClientReference("client1")).thenReturn(client);
+        Mockito.when(messageInsertCoalescer.save(any(MessageCreateRequest.class), eq(client))).thenReturn(msg);
 
         String json = "{\"content\": \"new message\"}";
 
@@ -103,15 +254,65 @@ class MessageControllerTest {
                 .andExpect(jsonPath("$.content").value("Message for client1"));
     }
 
+    @Test
+    void createMessage_rejectsTtlAboveMaximum_andCapsClientDefault() throws Exception {
+        Client client = Client.builder().uuid(UUID.randomUUID()).username("client1").build();
+        Message msg = Message.builder().uuid(UUID.randomUUID()).content("Message for client1").build();
+
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.when(clientService.getClientReference("client1")).thenReturn(client);
+        Mockito.when(clientService.getMessageTtlSeconds("client1")).thenReturn(Long.MAX_VALUE);
+        Mockito.when(messageInsertCoalescer.save(any(MessageCreateRequest.class), eq(client))).thenReturn(msg);
+
+        mockMvc.perform(post("/api/v1/messages/")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"new message\", \"ttlSeconds\": " + Long.MAX_VALUE + "}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("TTL must be at most " + MessageCreateRequest.MAX_TTL_SECONDS + " seconds"));
+        mockMvc.perform(post("/api/v1/messages/")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"new message\"}"))
+                .andExpect(status().isCreated());
+
+        verify(messageInsertCoalescer).save(new MessageCreateRequest("new message", MessageCreateRequest.MAX_TTL_SECONDS), client);
+    }
+
+    @Test
+    void createMessages_returnsIdsInRequestOrder_andRejectsInvalidItems() throws Exception {
+        Client client = Client.builder().uuid(UUID.randomUUID()).username("client1").build();
+        Message first = Message.builder().uuid(UUID.randomUUID()).content("first").build();
+        Message third = Message.builder().uuid(UUID.randomUUID()).content("third").build();
+
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.when(clientService.getClientReference("client1")).thenReturn(client);
+        Mockito.when(messageService.saveAll(any(), eq(client))).thenReturn(List.of(first, third));
+
+        String json = "[{\"content\": \"first\"}, {\"content\": \"\"}, {\"content\": \"third\"}]";
+
+        mockMvc.perform(post("/api/v1/messages/batch")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.results[0].uuid").value(first.getUuid().toString()))
+                .andExpect(jsonPath("$.results[1].uuid").doesNotExist())
+                .andExpect(jsonPath("$.results[1].errors[0]").value("Content must not be empty"))
+                .andExpect(jsonPath("$.results[2].index").value(2))
+                .andExpect(jsonPath("$.results[2].uuid").value(third.getUuid().toString()));
+
+        verify(messageService).saveAll(List.of(new MessageCreateRequest("first"), new MessageCreateRequest("third")), client);
+    }
+
     @Test
     void updateMessage_returnsOk_whenAuthorized() throws Exception {
         UUID message_id = UUID.randomUUID();
 
-        Message updatedMessage = Message.builder().uuid(UUID.randomUUID()).content("Updated message").build();
-
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client1");
-        Mockito.when(messageSecurity.isAuthorizedToManageMessage(eq(message_id), any())).thenReturn(true);
-        Mockito.when(messageService.update(eq(message_id), any(MessageCreateRequest.class))).thenReturn(updatedMessage);
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.when(messageService.update(eq(message_id), any(MessageCreateRequest.class), eq("client1"), isNull())).thenReturn(5L);
 
         String json = "{\"content\": \"Updated message\"}";
 
@@ -120,15 +321,56 @@ class MessageControllerTest {
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(json))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
                 .andExpect(jsonPath("$.content").value("Updated message"));
     }
 
+    @Test
+    void updateMessage_passesIfMatchVersion_andReturnsNewETag() throws Exception {
+        UUID message_id = UUID.randomUUID();
+
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.when(messageService.update(eq(message_id), any(MessageCreateRequest.class), eq("client1"), eq(2L))).thenReturn(3L);
+
+        mockMvc.perform(put("/api/v1/messages/{id}", message_id)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Updated message\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    void updateMessage_returnsPreconditionFailed_whenVersionChanged() throws Exception {
+        UUID message_id = UUID.randomUUID();
+
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.doThrow(new PreconditionFailedException("Modified"))
+                .when(messageService).update(eq(message_id), any(MessageCreateRequest.class), eq("client1"), eq(2L));
+
+        mockMvc.perform(put("/api/v1/messages/{id}", message_id)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .header(HttpHeaders.IF_MATCH, "\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Updated message\"}"))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/api/v1/messages/{id}", message_id)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .header(HttpHeaders.IF_MATCH, "W/\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Updated message\"}"))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     void updateMessage_returnsForbidden_whenNotAuthorized() throws Exception {
         UUID message_id = UUID.randomUUID();
 
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client2");
-        Mockito.when(messageSecurity.isAuthorizedToManageMessage(eq(message_id), any())).thenReturn(false);
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client2", null, 0));
+        Mockito.doThrow(new MessageAccessDeniedException("Not allowed"))
+                .when(messageService).update(eq(message_id), any(MessageCreateRequest.class), eq("client2"), isNull());
 
         String json = "{\"content\": \"Updated message\"}";
 
@@ -139,26 +381,43 @@ class MessageControllerTest {
                 .andExpect(status().isForbidden());
     }
 
+    @Test
+    void updateMessage_returnsNotFound_whenMessageMissing() throws Exception {
+        UUID message_id = UUID.randomUUID();
+
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.doThrow(new MessageNotFoundException("Message not found"))
+                .when(messageService).update(eq(message_id), any(MessageCreateRequest.class), eq("client1"), isNull());
+
+        String json = "{\"content\": \"Updated message\"}";
+
+        mockMvc.perform(put("/api/v1/messages/{id}", message_id)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void deleteMessage_returnsNoContent_whenAuthorized() throws Exception {
         UUID id = UUID.randomUUID();
 
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client1");
-        Mockito.when(messageSecurity.isAuthorizedToManageMessage(eq(id), any())).thenReturn(true);
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
 
         mockMvc.perform(delete("/api/v1/messages/{id}", id)
                         .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN))
                 .andExpect(status().isNoContent());
 
-        verify(messageService).deleteById(id);
+        verify(messageService).deleteById(id, "client1");
     }
 
     @Test
     void deleteMessage_returnsForbidden_whenNotAuthorized() throws Exception {
         UUID id = UUID.randomUUID();
 
-        Mockito.when(jwtUtil.extractUsername(CLIENT_JWT_TOKEN)).thenReturn("client1");
-        Mockito.when(messageSecurity.isAuthorizedToManageMessage(eq(id), any())).thenReturn(false);
+        Mockito.when(jwtUtil.verify(CLIENT_JWT_TOKEN)).thenReturn(new JwtUtil.VerifiedToken("client1", null, 0));
+        Mockito.doThrow(new MessageAccessDeniedException("Not allowed"))
+                .when(messageService).deleteById(id, "client1");
 
         mockMvc.perform(delete("/api/v1/messages/{id}", id)
                         .header(HttpHeaders.AUTHORIZATION, "Bearer " + CLIENT_JWT_TOKEN))
@@ -0,0 +1,32 @@
+package com.example.message_store.model;
+
+import com.example.message_store.util.DeflateCodec;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageTest {
+
+    @Test
+    void getContent_inflatesOnceUntilDeflatedContentChanges() {
+        Message message = Message.builder().contentDeflated(DeflateCodec.deflate("first body", 1)).build();
+
+        String first = message.getContent();
+
+        assertEquals("first body", first);
+        assertSame(first, message.getContent());
+        assertEquals(message, Message.builder().contentDeflated(message.getContentDeflated()).build());
+
+        message.setContentDeflated(DeflateCodec.deflate("second body", 1));
+
+        assertEquals("second body", message.getContent());
+    }
+
+    @Test
+    void getContent_prefersPlainContent() {
+        Message message = Message.builder().content("plain").build();
+
+        assertEquals("plain", message.getContent());
+        assertFalse(message.isCompressed());
+    }
+}
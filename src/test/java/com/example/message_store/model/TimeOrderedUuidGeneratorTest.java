@@ -0,0 +1,61 @@
+package com.example.message_store.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void generate_setsVersion7AndRfcVariant() {
+        UUID uuid = TimeOrderedUuidGenerator.generate();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void generate_embedsCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuidGenerator.generate();
+        long after = System.currentTimeMillis();
+
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        // A burst above 4096 ids per millisecond borrows from the following milliseconds.
+        assertTrue(timestamp >= before && timestamp < after + 1_000);
+    }
+
+    @Test
+    void generate_isStrictlyIncreasing() {
+        UUID previous = TimeOrderedUuidGenerator.generate();
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.generate();
+            assertTrue(next.compareTo(previous) > 0);
+            previous = next;
+        }
+    }
+
+    @Test
+    void generateForShardBucket_setsVersion8AndKeepsBucket() {
+        UUID uuid = TimeOrderedUuidGenerator.generate(12_345);
+
+        assertEquals(8, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(12_345, TimeOrderedUuidGenerator.shardBucket(uuid));
+        assertEquals(-1, TimeOrderedUuidGenerator.shardBucket(TimeOrderedUuidGenerator.generate()));
+        assertEquals(-1, TimeOrderedUuidGenerator.shardBucket(UUID.randomUUID()));
+        assertThrows(IllegalArgumentException.class, () -> TimeOrderedUuidGenerator.generate(TimeOrderedUuidGenerator.SHARD_BUCKETS));
+    }
+
+    @Test
+    void generateForShardBucket_isIncreasingAcrossBuckets() {
+        UUID previous = TimeOrderedUuidGenerator.generate(TimeOrderedUuidGenerator.SHARD_BUCKETS - 1);
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.generate(i % TimeOrderedUuidGenerator.SHARD_BUCKETS);
+            assertTrue(next.compareTo(previous) > 0);
+            previous = next;
+        }
+    }
+}
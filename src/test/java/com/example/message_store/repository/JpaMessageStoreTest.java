@@ -0,0 +1,50 @@
+package com.example.message_store.repository;
+
+import com.example.message_store.model.Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs the store contract against {@link MessageRepository}. Every repository call commits on its
+ * own, as it does when called from the services.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaMessageStoreTest extends MessageStoreContractTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository.deleteAll();
+    }
+
+    @Override
+    protected MessageStore store() {
+        return messageRepository;
+    }
+
+    @Override
+    protected Client client(String username) {
+        return clientRepository.findByUsername(username);
+    }
+
+    @Override
+    protected <T> T inTransaction(Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+}
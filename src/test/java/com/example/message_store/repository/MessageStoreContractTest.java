@@ -0,0 +1,340 @@
+package com.example.message_store.repository;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.service.MessageContentCompressor;
+import com.example.message_store.util.DeflateCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Behaviour every {@link MessageStore} implementation must share. Subclasses provide an empty
+ * store and the clients {@code client1} and {@code client2}.
+ */
+public abstract class MessageStoreContractTest {
+
+    protected static final String OWNER = "client1";
+    protected static final String OTHER = "client2";
+    private static final Comparator<UUID> UNSIGNED = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    protected abstract MessageStore store();
+
+    protected abstract Client client(String username);
+
+    /**
+     * Runs work in a transaction, as the services do around updates, deletes and streams.
+     */
+    protected <T> T inTransaction(Supplier<T> work) {
+        return work.get();
+    }
+
+    @Test
+    void save_assignsIdAndFindsById() {
+        Message saved = store().save(new Message("hello", client(OWNER)));
+
+        assertNotNull(saved.getUuid());
+        Message found = store().findById(saved.getUuid()).orElseThrow();
+        assertEquals("hello", found.getContent());
+        assertEquals(OWNER, found.getClient().getUsername());
+        assertEquals(new MessageContent(saved.getUuid(), "hello"), store().findContentById(saved.getUuid()).orElseThrow());
+        assertTrue(store().existsById(saved.getUuid()));
+    }
+
+    @Test
+    void findById_unknownId_empty() {
+        UUID unknown = UUID.randomUUID();
+
+        assertTrue(store().findById(unknown).isEmpty());
+        assertTrue(store().findContentById(unknown).isEmpty());
+        assertFalse(store().existsById(unknown));
+    }
+
+    @Test
+    void saveAll_keepsOrderAndCounts() {
+        List<Message> saved = store().saveAll(List.of(
+                new Message("first", client(OWNER)),
+                new Message("second", client(OTHER)),
+                new Message("third", client(OWNER))));
+
+        assertEquals(List.of("first", "second", "third"), saved.stream().map(Message::getContent).toList());
+        assertTrue(saved.stream().allMatch(message -> message.getUuid() != null));
+        assertEquals(3, store().count());
+    }
+
+    @Test
+    void keysetPages_followIdOrder() {
+        List<UUID> ids = saveMessages(8).stream().map(Message::getUuid).sorted(UNSIGNED).toList();
+
+        List<UUID> paged = new ArrayList<>();
+        Slice<MessageContent> page = store().findContentByOrderByUuidAsc(PageRequest.of(0, 3));
+        while (true) {
+            page.forEach(message -> paged.add(message.uuid()));
+            if (!page.hasNext()) {
+                break;
+            }
+            page = store().findContentByUuidGreaterThanOrderByUuidAsc(paged.get(paged.size() - 1), PageRequest.of(0, 3));
+        }
+
+        assertEquals(ids, paged);
+    }
+
+    @Test
+    void recentPages_newestFirstForOneClient() {
+        List<Message> saved = saveMessages(7);
+        store().save(new Message("other client", client(OTHER)));
+        Comparator<Message> newestFirst = Comparator.comparing(Message::getCreatedAt)
+                .thenComparing(Message::getUuid, UNSIGNED).reversed();
+        List<UUID> expected = saved.stream()
+                .map(message -> store().findById(message.getUuid()).orElseThrow())
+                .sorted(newestFirst)
+                .map(Message::getUuid).toList();
+
+        UUID clientId = client(OWNER).getUuid();
+        List<MessageListItem> paged = new ArrayList<>();
+        Slice<MessageListItem> page = store().findRecentByClientId(clientId, PageRequest.of(0, 3));
+        while (true) {
+            paged.addAll(page.getContent());
+            if (!page.hasNext()) {
+                break;
+            }
+            MessageListItem last = paged.get(paged.size() - 1);
+            page = store().findRecentByClientIdBefore(clientId, last.createdAt(), last.uuid(), PageRequest.of(0, 3));
+        }
+
+        assertEquals(expected, paged.stream().map(MessageListItem::uuid).toList());
+        assertTrue(paged.stream().allMatch(item -> item.content().startsWith("message ") && item.createdAt() != null));
+    }
+
+    @Test
+    void findAll_offsetPagesWithTotal() {
+        saveMessages(5);
+
+        Page<Message> page = store().findAll(PageRequest.of(1, 2, Sort.by("content")));
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(List.of("message 2", "message 3"), page.getContent().stream().map(Message::getContent).toList());
+    }
+
+    @Test
+    void responseProjections_matchStoredMessages() {
+        saveMessages(3);
+        UUID id = store().save(new Message("single", client(OWNER))).getUuid();
+
+        Page<MessageResponse> page = store().findAllResponses(PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "content")));
+
+        assertEquals(4, page.getTotalElements());
+        assertEquals(List.of("single", "message 2"), page.getContent().stream().map(MessageResponse::content).toList());
+        assertEquals(List.of(new MessageResponse("message 1")),
+                store().findAllResponses(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "content"))).getContent().subList(0, 1));
+        assertEquals(List.of(new MessageResponse("message 1"), new MessageResponse("message 0")),
+                store().findResponses(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "content"))));
+        assertEquals(new VersionedMessageResponse(new MessageResponse("single"), 0), store().findResponseById(id).orElseThrow());
+        assertTrue(store().findResponseById(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void sortByContent_ordersDeflatedMessagesByTheirText() {
+        saveMessages(3);
+        String large = "message 1, continued".repeat(100);
+        store().save(new MessageContentCompressor(true, 1024, 1).compress(new Message(large, client(OWNER))));
+
+        assertEquals(List.of("message 0", "message 1", large, "message 2"),
+                store().findAll(PageRequest.of(0, 4, Sort.by("content"))).map(Message::getContent).getContent());
+        assertEquals(List.of(new MessageResponse("message 2"), new MessageResponse(large)),
+                store().findAllResponses(PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "content"))).getContent());
+    }
+
+    @Test
+    void updateContentIfOwner_onlyForOwner() {
+        UUID id = store().save(new Message("original", client(OWNER))).getUuid();
+
+        assertEquals(Optional.empty(), inTransaction(() -> store().updateContentIfOwner(id, OTHER, "hijacked", null, null)));
+        assertEquals(Optional.empty(), inTransaction(() -> store().updateContentIfOwner(UUID.randomUUID(), OWNER, "missing", null, null)));
+        assertEquals(Optional.of(1L), inTransaction(() -> store().updateContentIfOwner(id, OWNER, "updated", null, null)));
+
+        Message found = store().findById(id).orElseThrow();
+        assertEquals("updated", found.getContent());
+        assertEquals(OWNER, found.getClient().getUsername());
+        assertEquals(1, store().count());
+    }
+
+    @Test
+    void updateContentIfOwner_withExpectedVersion_onlyWhileUnchanged() {
+        UUID id = store().save(new Message("original", client(OWNER))).getUuid();
+        assertEquals(0L, store().findVersionById(id).orElseThrow());
+
+        assertEquals(Optional.of(1L), inTransaction(() -> store().updateContentIfOwner(id, OWNER, "first writer", null, 0L)));
+        assertEquals(Optional.empty(), inTransaction(() -> store().updateContentIfOwner(id, OWNER, "second writer", null, 0L)));
+
+        Message found = store().findById(id).orElseThrow();
+        assertEquals("first writer", found.getContent());
+        assertEquals(1L, found.getVersion());
+        assertEquals(1L, store().findVersionById(id).orElseThrow());
+        assertTrue(store().findVersionById(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void save_withStaleVersion_rejected() {
+        UUID id = store().save(new Message("original", client(OWNER))).getUuid();
+        Message stale = store().findById(id).orElseThrow();
+        inTransaction(() -> store().updateContentIfOwner(id, OWNER, "updated", null, null));
+
+        stale.setContent("overwrite");
+        assertThrows(OptimisticLockingFailureException.class, () -> store().save(stale));
+        assertEquals("updated", store().findById(id).orElseThrow().getContent());
+    }
+
+    @Test
+    void deflatedContent_storedAsIsAndInflatedOnRead() {
+        String large = "{\"sku\":\"WIDGET-1\",\"quantity\":1,\"status\":\"shipped\"}".repeat(60);
+        String larger = large + large;
+        Message compressed = new MessageContentCompressor(true, 1024, 1).compress(new Message(large, client(OWNER)));
+        UUID id = store().save(compressed).getUuid();
+
+        Message found = store().findById(id).orElseThrow();
+        assertTrue(found.isCompressed());
+        assertEquals(large, found.getContent());
+        assertEquals(large, store().findContentById(id).orElseThrow().content());
+
+        assertEquals(Optional.of(1L), inTransaction(() -> store().updateContentIfOwner(id, OWNER, null, DeflateCodec.deflate(larger, 1), null)));
+        assertEquals(larger, store().findById(id).orElseThrow().getContent());
+        assertEquals(Optional.of(2L), inTransaction(() -> store().updateContentIfOwner(id, OWNER, "small again", null, null)));
+        assertFalse(store().findById(id).orElseThrow().isCompressed());
+        assertEquals("small again", store().findContentById(id).orElseThrow().content());
+    }
+
+    @Test
+    void expiredMessages_hiddenFromReadsUntilDeleted() {
+        Instant now = Instant.now();
+        UUID expired = store().save(new Message("expired", client(OWNER), now.minusSeconds(1))).getUuid();
+        UUID expiring = store().save(new Message("expiring", client(OWNER), now.plusSeconds(3600))).getUuid();
+        UUID permanent = store().save(new Message("permanent", client(OWNER))).getUuid();
+
+        assertTrue(store().findById(expired).isEmpty());
+        assertTrue(store().findContentById(expired).isEmpty());
+        assertTrue(store().findResponseById(expired).isEmpty());
+        assertTrue(store().findVersionById(expired).isEmpty());
+        assertFalse(store().existsById(expired));
+        assertEquals(Optional.empty(), inTransaction(() -> store().updateContentIfOwner(expired, OWNER, "revived", null, null)));
+        assertEquals(now.plusSeconds(3600).truncatedTo(ChronoUnit.MILLIS),
+                store().findResponseById(expiring).orElseThrow().expiresAt().truncatedTo(ChronoUnit.MILLIS));
+        assertEquals(2, store().findAllResponses(PageRequest.of(0, 10)).getTotalElements());
+        assertEquals(2, store().count());
+        assertEquals(List.of(expiring, permanent).stream().sorted(UNSIGNED).toList(),
+                store().findContentByOrderByUuidAsc(PageRequest.of(0, 10)).map(MessageContent::uuid).toList());
+        assertEquals(Set.of(expiring, permanent), store().findRecentByClientId(client(OWNER).getUuid(), PageRequest.of(0, 10))
+                .map(MessageListItem::uuid).toSet());
+
+        assertEquals(List.of(new MessageKey(expired, client(OWNER).getUuid())), store().findExpired(now, PageRequest.of(0, 10)));
+        assertEquals(List.of(expired), inTransaction(() -> store().deleteExpired(List.of(expired, expiring), now)));
+        assertEquals(List.of(), inTransaction(() -> store().deleteExpired(List.of(expired), now)));
+        assertEquals(List.of(), store().findExpired(now, PageRequest.of(0, 10)));
+        assertEquals(2, store().count());
+    }
+
+    @Test
+    void findContentByIds_returnsOnlyLiveMessages() {
+        Instant now = Instant.now();
+        List<UUID> ids = saveMessages(3).stream().map(Message::getUuid).toList();
+        UUID expired = store().save(new Message("expired", client(OWNER), now.minusSeconds(1))).getUuid();
+
+        List<MessageContent> found = store().findContentByIds(List.of(ids.get(0), ids.get(2), expired, UUID.randomUUID()));
+
+        assertEquals(Set.of(new MessageContent(ids.get(0), "message 0"), new MessageContent(ids.get(2), "message 2")), Set.copyOf(found));
+    }
+
+    @Test
+    void findEarliestExpiry_includesExpiredMessages() {
+        Instant now = Instant.now();
+        store().save(new Message("permanent", client(OWNER)));
+        assertNull(store().findEarliestExpiry());
+
+        store().save(new Message("expiring", client(OWNER), now.plusSeconds(3600)));
+        store().save(new Message("expired", client(OWNER), now.minusSeconds(1)));
+
+        assertEquals(now.minusSeconds(1).truncatedTo(ChronoUnit.MILLIS),
+                store().findEarliestExpiry().truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    @Test
+    void countByClient_countsEveryClientWithMessages() {
+        saveMessages(3);
+        store().save(new Message("other", client(OTHER)));
+        store().save(new Message("expired", client(OTHER), Instant.now().minusSeconds(1)));
+
+        Set<ClientMessageCount> counts = Set.copyOf(store().countByClient());
+
+        assertEquals(Set.of(new ClientMessageCount(client(OWNER).getUuid(), 3), new ClientMessageCount(client(OTHER).getUuid(), 2)), counts);
+    }
+
+    @Test
+    void deleteIfOwner_onlyForOwner() {
+        UUID id = store().save(new Message("to delete", client(OWNER))).getUuid();
+
+        assertEquals(0, inTransaction(() -> store().deleteIfOwner(id, OTHER)));
+        assertTrue(store().existsById(id));
+        assertEquals(1, inTransaction(() -> store().deleteIfOwner(id, OWNER)));
+
+        assertFalse(store().existsById(id));
+        assertEquals(0, inTransaction(() -> store().deleteIfOwner(id, OWNER)));
+        assertEquals(0, store().count());
+    }
+
+    @Test
+    void streams_coverAllMessagesInIdOrder() {
+        List<Message> saved = saveMessages(4);
+        saved.add(store().save(new Message("other client", client(OTHER))));
+        List<UUID> ids = saved.stream().map(Message::getUuid).sorted(UNSIGNED).toList();
+        List<UUID> ownerIds = saved.stream()
+                .filter(message -> message.getClient().getUsername().equals(OWNER))
+                .map(Message::getUuid).sorted(UNSIGNED).toList();
+
+        assertEquals(ids, inTransaction(() -> ids(store().streamAll())));
+        assertEquals(ownerIds, inTransaction(() -> ids(store().streamAllByClientUsername(OWNER))));
+        assertEquals(List.of(), inTransaction(() -> ids(store().streamAllByClientUsername("nobody"))));
+        List<MessageContent> contents = inTransaction(() -> {
+            try (Stream<MessageContent> stream = store().streamAllContent()) {
+                return stream.toList();
+            }
+        });
+        assertEquals(ids, contents.stream().map(MessageContent::uuid).sorted(UNSIGNED).toList());
+    }
+
+    private List<Message> saveMessages(int count) {
+        return new ArrayList<>(store().saveAll(IntStream.range(0, count)
+                .mapToObj(i -> new Message("message " + i, client(OWNER)))
+                .toList()));
+    }
+
+    private static List<UUID> ids(Stream<Message> messages) {
+        try (messages) {
+            return messages.map(Message::getUuid).toList();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.message_store.repository.log;
+
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.repository.ClientRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.repository.MessageStoreContractTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class LogStructuredMessageStoreTest extends MessageStoreContractTest {
+
+    private static final Map<String, Client> CLIENTS = Map.of(
+            OWNER, new Client(UUID.randomUUID(), OWNER),
+            OTHER, new Client(UUID.randomUUID(), OTHER));
+
+    @TempDir
+    Path directory;
+
+    private final ClientRepository clientRepository = mock(ClientRepository.class);
+    private LogStructuredMessageStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        CLIENTS.values().forEach(client -> {
+            when(clientRepository.findByUsername(client.getUsername())).thenReturn(client);
+            when(clientRepository.findById(client.getUuid())).thenReturn(Optional.of(client));
+        });
+        store = open(DataSize.ofMegabytes(1));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Override
+    protected MessageStore store() {
+        return store;
+    }
+
+    @Override
+    protected Client client(String username) {
+        return CLIENTS.get(username);
+    }
+
+    @Test
+    void reopen_recoversLatestVersionOfEveryMessage() throws IOException {
+        UUID kept = store.save(new Message("kept", client(OWNER))).getUuid();
+        UUID updated = store.save(new Message("before", client(OWNER))).getUuid();
+        UUID deleted = store.save(new Message("deleted", client(OWNER))).getUuid();
+        store.updateContentIfOwner(updated, OWNER, "after", null, null);
+        store.deleteIfOwner(deleted, OWNER);
+
+        store.close();
+        store = open(DataSize.ofMegabytes(1));
+
+        assertEquals(2, store.count());
+        assertEquals("kept", store.findById(kept).orElseThrow().getContent());
+        assertEquals("after", store.findById(updated).orElseThrow().getContent());
+        assertFalse(store.existsById(deleted));
+    }
+
+    @Test
+    void reopen_dropsTornRecordAndAppendsAfterLastGoodOne() throws IOException {
+        UUID complete = store.save(new Message("complete", client(OWNER))).getUuid();
+        UUID torn = store.save(new Message("torn by a crash", client(OWNER))).getUuid();
+        store.close();
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int lastWritten = bytes.length - 1;
+        while (bytes[lastWritten] == 0) {
+            lastWritten--;
+        }
+        bytes[lastWritten] ^= 0x7F;
+        Files.write(segment, bytes);
+
+        store = open(DataSize.ofMegabytes(1));
+        UUID next = store.save(new Message("next", client(OWNER))).getUuid();
+        store.close();
+        store = open(DataSize.ofMegabytes(1));
+
+        assertTrue(store.existsById(complete));
+        assertFalse(store.existsById(torn));
+        assertEquals("next", store.findById(next).orElseThrow().getContent());
+    }
+
+    @Test
+    void reopen_refusesSegmentsOfAnotherFormat() throws IOException {
+        store.save(new Message("written by this build", client(OWNER)));
+        store.close();
+        Path segment = segmentFiles().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[7] = (byte) (Segment.FORMAT_VERSION + 1);
+        Files.write(segment, bytes);
+
+        IOException versionMismatch = assertThrows(IOException.class, () -> open(DataSize.ofMegabytes(1)));
+        assertTrue(versionMismatch.getMessage().contains("format version " + (Segment.FORMAT_VERSION + 1)));
+
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2, 3, 4});
+        assertThrows(IOException.class, () -> open(DataSize.ofMegabytes(1)));
+        directory = directory.resolve("fresh");
+        store = open(DataSize.ofMegabytes(1));
+    }
+
+    @Test
+    void compact_reclaimsOverwrittenSegmentsWithoutResurrectingDeletes() throws IOException {
+        store.close();
+        directory = directory.resolve("small-segments");
+        store = open(DataSize.ofKilobytes(4));
+        List<UUID> ids = store.saveAll(IntStream.range(0, 200)
+                        .mapToObj(i -> new Message("version 1 of message " + i, client(OWNER)))
+                        .toList())
+                .stream().map(Message::getUuid).toList();
+        ids.forEach(id -> store.updateContentIfOwner(id, OWNER, "version 2 of " + id, null, null));
+        ids.subList(0, 50).forEach(id -> store.deleteIfOwner(id, OWNER));
+        int segmentsBefore = store.getSegmentCount();
+
+        int compacted = store.compact();
+
+        assertTrue(compacted > 0);
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        assertEquals(store.getSegmentCount(), segmentFiles().size());
+        store.close();
+        store = open(DataSize.ofKilobytes(4));
+        assertEquals(150, store.count());
+        ids.subList(0, 50).forEach(id -> assertFalse(store.existsById(id)));
+        ids.subList(50, 200).forEach(id -> assertEquals("version 2 of " + id, store.findById(id).orElseThrow().getContent()));
+    }
+
+    @Test
+    void keysetPages_compareIdsUnsigned() {
+        UUID low = new UUID(0x0000000000000001L, 1);
+        UUID high = new UUID(0x8000000000000000L, 1);
+        store.save(new Message(high, "high", client(OWNER)));
+        store.save(new Message(low, "low", client(OWNER)));
+
+        List<UUID> ids = store.findContentByOrderByUuidAsc(PageRequest.of(0, 10)).stream().map(MessageContent::uuid).toList();
+
+        assertEquals(List.of(low, high), ids);
+    }
+
+    @Test
+    void streams_sortIdSnapshotUnsigned() {
+        List<UUID> ids = IntStream.range(0, 1000).mapToObj(i -> UUID.randomUUID()).toList();
+        store.saveAll(ids.stream().map(id -> new Message(id, "message " + id, client(OWNER))).toList());
+        store.deleteIfOwner(ids.get(0), OWNER);
+        List<UUID> expected = ids.subList(1, ids.size()).stream()
+                .sorted(Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+                        .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned))
+                .toList();
+
+        try (Stream<Message> messages = store.streamAll()) {
+            assertEquals(expected, messages.map(Message::getUuid).toList());
+        }
+    }
+
+    @Test
+    void findAll_sortedByContent_onlyInPages() {
+        store.save(new Message("b", client(OWNER)));
+        store.save(new Message("a", client(OWNER)));
+        store.save(new Message("c", client(OWNER)));
+
+        Sort byContent = Sort.by(Sort.Direction.DESC, "content");
+        assertEquals(List.of("c", "b"), store.findAll(PageRequest.of(0, 2, byContent)).map(Message::getContent).getContent());
+        assertEquals(List.of("a"), store.findAll(PageRequest.of(1, 2, byContent)).map(Message::getContent).getContent());
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> store.findAll(Pageable.unpaged(Sort.by("content"))));
+    }
+
+    @Test
+    void save_messageLargerThanSegment_rejected() {
+        Message tooLarge = new Message("x".repeat(2 * 1024 * 1024), client(OWNER));
+
+        assertThrows(IllegalArgumentException.class, () -> store.save(tooLarge));
+    }
+
+    private LogStructuredMessageStore open(DataSize segmentSize) throws IOException {
+        return new LogStructuredMessageStore(clientRepository, directory.toString(), segmentSize, 0.5, Duration.ZERO, false);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.message_store.repository.shard;
+
+import com.example.message_store.config.ShardingConfig;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import com.example.message_store.repository.ClientRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.repository.MessageStoreContractTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the store contract against three in-memory shards.
+ */
+@DataJpaTest(properties = {
+        "message.shards.count=3",
+        "message.shards.url-pattern=jdbc:h2:mem:sharded-store-test-%d"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("sharded")
+@Import({ShardingConfig.class, ShardedMessageStore.class, ShardRebalancer.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ShardedMessageStoreTest extends MessageStoreContractTest {
+
+    @Autowired
+    private ShardedMessageStore store;
+
+    @Autowired
+    private ShardRebalancer rebalancer;
+
+    @Autowired
+    private MessageShards shards;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            jdbc(shard).update("delete from messages");
+        }
+    }
+
+    @Override
+    protected MessageStore store() {
+        return store;
+    }
+
+    @Override
+    protected Client client(String username) {
+        return clientRepository.findByUsername(username);
+    }
+
+    @Override
+    protected <T> T inTransaction(Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+
+    @Test
+    void save_storesMessageOnItsClientsShard() {
+        for (String username : new String[]{OWNER, OTHER}) {
+            Client client = client(username);
+            Message saved = store.save(new Message("hello", client));
+
+            int shard = shards.shardOfClient(client.getUuid());
+            assertEquals(shard, shards.shardOfId(saved.getUuid()));
+            assertEquals(1, countOnShard(shard, saved.getUuid()));
+        }
+    }
+
+    @Test
+    void rebalance_movesMessagesToTheirClientsShard() {
+        Client client = client(OWNER);
+        int home = shards.shardOfClient(client.getUuid());
+        int elsewhere = (home + 1) % shards.getCount();
+        UUID id = UUID.randomUUID();
+        jdbc(elsewhere).update("insert into messages(uuid, client_id, content, version) values (?, ?, ?, 0)",
+                id, client.getUuid(), "misplaced");
+
+        assertEquals(1, rebalancer.rebalance());
+
+        assertEquals(0, countOnShard(elsewhere, id));
+        assertEquals(1, countOnShard(home, id));
+        assertEquals("misplaced", store.findById(id).orElseThrow().getContent());
+        assertEquals(1, store.deleteIfOwner(id, OWNER));
+        assertEquals(0, rebalancer.rebalance());
+    }
+
+    private long countOnShard(int shard, UUID id) {
+        return jdbc(shard).queryForObject("select count(*) from messages where uuid = ?", Long.class, id);
+    }
+
+    private JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate(shards.get(shard));
+    }
+}
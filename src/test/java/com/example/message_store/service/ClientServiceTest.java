@@ -0,0 +1,90 @@
+package com.example.message_store.service;
+
+import com.example.message_store.model.Client;
+import com.example.message_store.repository.ClientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ClientServiceTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    private ClientService clientService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        clientService = new ClientService(clientRepository, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void testGetClientReference_cachesClientId() {
+        UUID clientId = UUID.randomUUID();
+        Client reference = Client.builder().uuid(clientId).build();
+        when(clientRepository.findByUsername("client1")).thenReturn(Client.builder().uuid(clientId).username("client1").build());
+        when(clientRepository.getReferenceById(clientId)).thenReturn(reference);
+
+        Client first = clientService.getClientReference("client1");
+        Client second = clientService.getClientReference("client1");
+
+        assertSame(reference, first);
+        assertSame(reference, second);
+        verify(clientRepository, times(1)).findByUsername("client1");
+        assertEquals(1, clientService.getCacheHits());
+        assertEquals(1, clientService.getCacheMisses());
+        assertEquals(0.5, clientService.getCacheHitRate());
+    }
+
+    @Test
+    void testGetMessageTtlSeconds_sharesCachedLookup() {
+        UUID clientId = UUID.randomUUID();
+        when(clientRepository.findByUsername("client1")).thenReturn(new Client(clientId, "client1", 3600L));
+        when(clientRepository.getReferenceById(clientId)).thenReturn(Client.builder().uuid(clientId).build());
+
+        assertEquals(3600L, clientService.getMessageTtlSeconds("client1"));
+        assertNotNull(clientService.getClientReference("client1"));
+        assertNull(clientService.getMessageTtlSeconds("unknown"));
+
+        verify(clientRepository, times(1)).findByUsername("client1");
+    }
+
+    @Test
+    void testGetClientReference_returnsNull_whenClientUnknown() {
+        when(clientRepository.findByUsername("unknown")).thenReturn(null);
+
+        assertNull(clientService.getClientReference("unknown"));
+        assertNull(clientService.getClientReference("unknown"));
+
+        verify(clientRepository, times(2)).findByUsername("unknown");
+        verify(clientRepository, never()).getReferenceById(any());
+    }
+
+    @Test
+    void testOnClientChanged_evictsChangedOrAllClients() {
+        when(clientRepository.findByUsername("client1")).thenReturn(Client.builder().uuid(UUID.randomUUID()).username("client1").build());
+        when(clientRepository.findByUsername("client2")).thenReturn(Client.builder().uuid(UUID.randomUUID()).username("client2").build());
+        clientService.getClientId("client1");
+        clientService.getClientId("client2");
+
+        clientService.onClientChanged(new ClientChangedEvent("client1"));
+        clientService.getClientId("client1");
+        clientService.getClientId("client2");
+
+        verify(clientRepository, times(2)).findByUsername("client1");
+        verify(clientRepository, times(1)).findByUsername("client2");
+
+        clientService.onClientChanged(new ClientChangedEvent(null));
+        clientService.getClientId("client2");
+
+        verify(clientRepository, times(2)).findByUsername("client2");
+    }
+}
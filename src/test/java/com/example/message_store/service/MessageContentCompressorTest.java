@@ -0,0 +1,50 @@
+package com.example.message_store.service;
+
+import com.example.message_store.model.Message;
+import com.example.message_store.util.DeflateCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageContentCompressorTest {
+
+    private final MessageContentCompressor compressor = new MessageContentCompressor(true, 1024, 1);
+
+    @Test
+    void compress_belowMinLength_keepsPlainContent() {
+        Message message = compressor.compress(new Message("short", null));
+
+        assertFalse(message.isCompressed());
+        assertEquals("short", message.getContent());
+        assertNull(message.getContentDeflated());
+    }
+
+    @Test
+    void compress_largeRepetitiveContent_deflatesAndInflatesLazily() {
+        String json = IntStream.range(0, 40)
+                .mapToObj(i -> "{\"line\":" + i + ",\"sku\":\"WIDGET-" + (i % 3) + "\",\"price\":9.99,\"currency\":\"EUR\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        Message message = compressor.compress(new Message(json, null));
+
+        assertTrue(message.isCompressed());
+        assertTrue(message.getContentDeflated().length * 5 < json.length());
+        assertEquals(json, message.getContent());
+        assertEquals(json, DeflateCodec.inflate(message.getContentDeflated()));
+    }
+
+    @Test
+    void deflate_incompressibleOrDisabled_returnsNull() {
+        Random random = new Random(42);
+        String noise = random.ints(2048, 0x100, 0x800)
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                .toString();
+
+        assertNull(compressor.deflate(noise));
+        assertNull(new MessageContentCompressor(false, 1024, 1).deflate("x".repeat(4096)));
+    }
+}
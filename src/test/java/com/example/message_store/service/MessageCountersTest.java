@@ -0,0 +1,97 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.ClientMessageCount;
+import com.example.message_store.dto.MessageStatsResponse;
+import com.example.message_store.repository.MessageStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageCountersTest {
+
+    @Mock
+    private MessageStore messageStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MessageCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        counters = new MessageCounters(messageStore, transactionManager);
+    }
+
+    @Test
+    void events_adjustTotalAndClientCounts() {
+        UUID client = UUID.randomUUID();
+        counters.onMessageEvent(MessageEvent.created(UUID.randomUUID(), client, "one"));
+        counters.onMessageEvent(MessageEvent.created(UUID.randomUUID(), client, "two"));
+        counters.onMessageEvent(MessageEvent.updated(UUID.randomUUID(), "edited"));
+        counters.onMessageEvent(MessageEvent.deleted(UUID.randomUUID(), client));
+        counters.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "unowned"));
+
+        assertEquals(2, counters.getTotal());
+        assertEquals(1, counters.getCount(client));
+        assertEquals(0, counters.getCount(UUID.randomUUID()));
+    }
+
+    @Test
+    void reconcile_replacesCountsWithDatabaseCounts() {
+        UUID stale = UUID.randomUUID();
+        UUID busy = UUID.randomUUID();
+        UUID quiet = UUID.randomUUID();
+        counters.onMessageEvent(MessageEvent.created(UUID.randomUUID(), stale, "gone since"));
+        when(messageStore.countByClient()).thenReturn(List.of(
+                new ClientMessageCount(quiet, 1), new ClientMessageCount(busy, 4), new ClientMessageCount(null, 2)));
+
+        assertEquals(7, counters.reconcile());
+
+        assertEquals(7, counters.getTotal());
+        assertEquals(0, counters.getCount(stale));
+        MessageStatsResponse stats = counters.getStats(10);
+        assertEquals(7, stats.total());
+        assertEquals(List.of(new ClientMessageCount(busy, 4), new ClientMessageCount(quiet, 1)), stats.clients());
+        assertEquals(List.of(new ClientMessageCount(busy, 4)), counters.getStats(1).clients());
+    }
+
+    @Test
+    void isTotalExact_onlyAfterReconcileAndBeforeEarliestExpiry() {
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        assertFalse(counters.isTotalExact(now));
+
+        when(messageStore.findEarliestExpiry()).thenReturn(now.plusSeconds(60));
+        counters.reconcile();
+
+        assertTrue(counters.isTotalExact(now));
+        assertFalse(counters.isTotalExact(now.plusSeconds(60)));
+
+        counters.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "short-lived", now.plusSeconds(10)));
+
+        assertFalse(counters.isTotalExact(now.plusSeconds(10)));
+    }
+
+    @Test
+    void refreshEarliestExpiry_readsNextExpiryAfterSweep() {
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        when(messageStore.findEarliestExpiry()).thenReturn(now.minusSeconds(1));
+        counters.reconcile();
+        assertFalse(counters.isTotalExact(now));
+
+        when(messageStore.findEarliestExpiry()).thenReturn(null);
+        counters.refreshEarliestExpiry();
+
+        assertTrue(counters.isTotalExact(now));
+        assertTrue(counters.isTotalExact(now.plusSeconds(315_360_000)));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.message_store.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageExpirySweeperTest {
+
+    @Test
+    void sweep_deletesBatchesUntilNoneAreLeft() throws InterruptedException {
+        MessageService messageService = mock(MessageService.class);
+        MessageCounters counters = mock(MessageCounters.class);
+        when(messageService.purgeExpired(100)).thenReturn(
+                new MessageService.PurgeResult(100, true),
+                new MessageService.PurgeResult(98, true),
+                new MessageService.PurgeResult(7, false));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageExpirySweeper sweeper = new MessageExpirySweeper(messageService, counters, registry, Duration.ZERO, 100, Duration.ofMillis(1));
+
+        assertEquals(205, sweeper.sweep());
+
+        verify(messageService, times(3)).purgeExpired(100);
+        verify(counters).refreshEarliestExpiry();
+        assertEquals(205, registry.counter("message.expiry.purged").count());
+    }
+
+    @Test
+    void sweep_nothingExpired_singleQuery() throws InterruptedException {
+        MessageService messageService = mock(MessageService.class);
+        MessageCounters counters = mock(MessageCounters.class);
+        when(messageService.purgeExpired(100)).thenReturn(new MessageService.PurgeResult(0, false));
+        MessageExpirySweeper sweeper = new MessageExpirySweeper(messageService, counters, new SimpleMeterRegistry(), Duration.ZERO, 100, Duration.ZERO);
+
+        assertEquals(0, sweeper.sweep());
+
+        verify(messageService, times(1)).purgeExpired(100);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.message_store.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageFeedTest {
+
+    private MessageFeed feed;
+
+    @AfterEach
+    void tearDown() {
+        feed.close();
+    }
+
+    @Test
+    void subscriber_receivesEventsPublishedAfterSubscribing() {
+        feed = new MessageFeed(16, 2, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        UUID earlier = UUID.randomUUID();
+        UUID created = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        feed.onMessageEvent(MessageEvent.created(earlier, null, "before subscribing"));
+        RecordingEmitter emitter = new RecordingEmitter(null);
+
+        feed.subscribe(emitter, null);
+        feed.onMessageEvent(MessageEvent.created(created, null, "hello"));
+        feed.onMessageEvent(MessageEvent.deleted(deleted, null));
+
+        await(() -> emitter.text().contains(deleted.toString()));
+        String text = emitter.text();
+        assertTrue(text.contains("event:created"));
+        assertTrue(text.contains("id:" + (feed.getLastEventId() - 1)));
+        assertTrue(text.contains("event:deleted"));
+        assertFalse(text.contains(earlier.toString()));
+    }
+
+    @Test
+    void subscribe_resumesAfterLastEventId() {
+        feed = new MessageFeed(16, 2, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        UUID seen = UUID.randomUUID();
+        UUID missed = UUID.randomUUID();
+        feed.onMessageEvent(MessageEvent.created(seen, null, "seen"));
+        long lastSeen = feed.getLastEventId();
+        feed.onMessageEvent(MessageEvent.updated(missed, "missed"));
+        RecordingEmitter emitter = new RecordingEmitter(null);
+
+        feed.subscribe(emitter, Long.toString(lastSeen));
+
+        await(() -> emitter.text().contains(missed.toString()));
+        assertFalse(emitter.text().contains(seen.toString()));
+        assertFalse(emitter.text().contains("event:" + MessageFeed.RESET));
+    }
+
+    @Test
+    void subscribe_sendsReset_whenLastEventIdIsNoLongerInRing() {
+        feed = new MessageFeed(4, 2, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        feed.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "first"));
+        long first = feed.getLastEventId();
+        for (int i = 0; i < 5; i++) {
+            feed.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "more"));
+        }
+        RecordingEmitter stale = new RecordingEmitter(null);
+        RecordingEmitter invalid = new RecordingEmitter(null);
+
+        feed.subscribe(stale, Long.toString(first));
+        feed.subscribe(invalid, "not-an-id");
+
+        await(() -> stale.text().contains("event:" + MessageFeed.RESET) && invalid.text().contains("event:" + MessageFeed.RESET));
+        assertTrue(stale.text().contains("id:" + feed.getLastEventId()));
+        assertFalse(stale.text().contains("event:created"));
+
+        UUID live = UUID.randomUUID();
+        feed.onMessageEvent(MessageEvent.created(live, null, "live"));
+        await(() -> stale.text().contains(live.toString()));
+    }
+
+    @Test
+    void slowSubscriber_isDroppedOnceRingOverruns() throws InterruptedException {
+        feed = new MessageFeed(4, 1, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        feed.subscribe(slow, null);
+
+        feed.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "blocks the first send"));
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 8; i++) {
+            feed.onMessageEvent(MessageEvent.created(UUID.randomUUID(), null, "overruns the ring"));
+        }
+        release.countDown();
+
+        await(() -> feed.getSubscriberCount() == 0);
+        assertEquals(1, feed.getDroppedCount());
+    }
+
+    @Test
+    void stalledSubscriber_isDroppedWithoutHoldingUpOthers() {
+        feed = new MessageFeed(16, 1, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter stuck = new RecordingEmitter(release);
+        RecordingEmitter healthy = new RecordingEmitter(null);
+        feed.subscribe(stuck, null);
+        await(() -> stuck.sending.getCount() == 0);
+        feed.subscribe(healthy, null);
+
+        UUID id = UUID.randomUUID();
+        feed.onMessageEvent(MessageEvent.created(id, null, "still delivered"));
+
+        await(() -> healthy.text().contains(id.toString()));
+        assertEquals(1, feed.getSubscriberCount());
+        assertEquals(1, feed.getDroppedCount());
+        release.countDown();
+        await(() -> stuck.completed);
+    }
+
+    @Test
+    void stalledSubscribers_beyondReplacementLimit_droppedWithoutGrowingDispatcher() {
+        feed = new MessageFeed(16, 2, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMillis(50));
+        CountDownLatch release = new CountDownLatch(1);
+        List<RecordingEmitter> stuck = new ArrayList<>();
+        for (int i = 0; i <= MessageFeed.MAX_REPLACEMENT_THREADS; i++) {
+            RecordingEmitter emitter = new RecordingEmitter(release);
+            stuck.add(emitter);
+            feed.subscribe(emitter, null);
+            int dropped = i + 1;
+            await(() -> feed.getDroppedCount() == dropped);
+        }
+        RecordingEmitter healthy = new RecordingEmitter(null);
+        feed.subscribe(healthy, null);
+
+        UUID id = UUID.randomUUID();
+        feed.onMessageEvent(MessageEvent.created(id, null, "still delivered"));
+
+        await(() -> healthy.text().contains(id.toString()));
+        assertEquals(2 + MessageFeed.MAX_REPLACEMENT_THREADS, feed.getDispatchThreadCount());
+        release.countDown();
+        await(() -> stuck.stream().allMatch(emitter -> emitter.completed));
+        await(() -> feed.getDispatchThreadCount() == 2);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Records what would be written to the connection; optionally blocks in the first send like
+     * a client that stopped reading.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final StringBuffer written = new StringBuffer();
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private volatile boolean completed;
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public synchronized void send(Set<DataWithMediaType> items) {
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            items.forEach(item -> written.append(item.getData()));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+            super.complete();
+        }
+
+        String text() {
+            return written.toString();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.model.Client;
+import com.example.message_store.model.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class MessageInsertCoalescerTest {
+
+    private static final Client CLIENT = Client.builder().uuid(UUID.randomUUID()).username("client1").build();
+
+    @Mock
+    private MessageService messageService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MessageInsertCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        when(messageService.insertAll(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            if (messages.size() > 1 && messages.stream().anyMatch(message -> message.getContent().equals("poison"))) {
+                throw new IllegalStateException("batch failed");
+            }
+            if (messages.get(0).getContent().equals("poison")) {
+                throw new IllegalArgumentException("bad message");
+            }
+            messages.forEach(message -> message.setUuid(UUID.randomUUID()));
+            return messages;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (coalescer != null) {
+            coalescer.stop();
+        }
+    }
+
+    @Test
+    void save_coalescesConcurrentInsertsAndReturnsEachCallerItsMessage() throws Exception {
+        coalescer = start(Duration.ofSeconds(2), 8);
+
+        List<Future<Message>> results = saveConcurrently(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7"));
+
+        for (int i = 0; i < results.size(); i++) {
+            Message saved = results.get(i).get();
+            assertEquals("m" + i, saved.getContent());
+            assertNotNull(saved.getUuid());
+        }
+        verify(messageService, times(1)).insertAll(argThat(messages -> messages.size() == 8));
+        assertEquals(8.0, meterRegistry.get("message.group-commit.batch.size").summary().max());
+    }
+
+    @Test
+    void save_retriesFailedBatchPerMessage_soOnlyTheBadInsertFails() throws Exception {
+        coalescer = start(Duration.ofSeconds(2), 3);
+
+        List<Future<Message>> results = saveConcurrently(List.of("good", "poison", "also good"));
+
+        assertEquals("good", results.get(0).get().getContent());
+        assertEquals("also good", results.get(2).get().getContent());
+        Exception failure = assertThrows(Exception.class, () -> results.get(1).get());
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        assertEquals(1.0, meterRegistry.get("message.group-commit.fallbacks").counter().count());
+    }
+
+    @Test
+    void save_delegatesToMessageService_whenDisabled() {
+        coalescer = new MessageInsertCoalescer(messageService, meterRegistry, false, Duration.ofMillis(1), 8, 16);
+        coalescer.start();
+        MessageCreateRequest request = new MessageCreateRequest("direct");
+
+        coalescer.save(request, CLIENT);
+
+        verify(messageService).save(request, CLIENT);
+        verify(messageService, never()).insertAll(anyList());
+    }
+
+    @Test
+    void save_queuedAfterStopBegan_savedDirectly() throws Exception {
+        CountDownLatch firstBatch = new CountDownLatch(1);
+        CountDownLatch secondBatch = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        doAnswer(invocation -> {
+            (batches.incrementAndGet() == 1 ? firstBatch : secondBatch).await();
+            return invocation.getArgument(0);
+        }).when(messageService).insertAll(anyList());
+        Message direct = new Message("late", CLIENT);
+        when(messageService.save(any(), eq(CLIENT))).thenReturn(direct);
+        coalescer = new MessageInsertCoalescer(messageService, meterRegistry, true, Duration.ZERO, 1, 1);
+        coalescer.start();
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            callers.submit(() -> coalescer.save(new MessageCreateRequest("first"), CLIENT));
+            await(() -> batches.get() == 1);
+            callers.submit(() -> coalescer.save(new MessageCreateRequest("queued"), CLIENT));
+            await(() -> meterRegistry.get("message.group-commit.queue.size").gauge().value() == 1);
+            Future<Message> late = callers.submit(() -> coalescer.save(new MessageCreateRequest("late"), CLIENT));
+            Thread stopper = new Thread(coalescer::stop);
+            stopper.start();
+            await(() -> !coalescer.isRunning());
+
+            firstBatch.countDown();
+
+            assertSame(direct, late.get(5, TimeUnit.SECONDS));
+            secondBatch.countDown();
+            stopper.join(5_000);
+            verify(messageService, times(2)).insertAll(anyList());
+        } finally {
+            firstBatch.countDown();
+            secondBatch.countDown();
+            callers.shutdownNow();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    private MessageInsertCoalescer start(Duration maxWait, int maxBatchSize) {
+        MessageInsertCoalescer started = new MessageInsertCoalescer(messageService, meterRegistry, true, maxWait, maxBatchSize, 64);
+        started.start();
+        return started;
+    }
+
+    private List<Future<Message>> saveConcurrently(List<String> contents) {
+        ExecutorService callers = Executors.newFixedThreadPool(contents.size());
+        try {
+            List<Future<Message>> results = new ArrayList<>();
+            for (String content : contents) {
+                results.add(callers.submit(() -> coalescer.save(new MessageCreateRequest(content), CLIENT)));
+            }
+            return results;
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
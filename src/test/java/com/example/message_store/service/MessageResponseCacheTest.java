@@ -0,0 +1,58 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageResponseCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<UUID, VersionedMessageResponse> loader =
+            id -> new VersionedMessageResponse(new MessageResponse("content " + loads.incrementAndGet()), 0);
+
+    @Test
+    void get_loadsOnce_andServesRepeatReadsFromCache() {
+        MessageResponseCache cache = new MessageResponseCache(true, 100);
+        UUID id = UUID.randomUUID();
+
+        cache.get(id, loader);
+        VersionedMessageResponse second = cache.get(id, loader);
+
+        assertEquals("content 1", second.response().content());
+        assertEquals(1, loads.get());
+        assertEquals(0.5, cache.getHitRatio());
+    }
+
+    @Test
+    void onMessageEvent_invalidatesUpdatedAndDeletedMessages() {
+        MessageResponseCache cache = new MessageResponseCache(true, 100);
+        UUID updated = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        cache.get(updated, loader);
+        cache.get(deleted, loader);
+
+        cache.onMessageEvent(MessageEvent.updated(updated, "changed"));
+        cache.onMessageEvent(MessageEvent.deleted(deleted, null));
+
+        assertEquals("content 3", cache.get(updated, loader).response().content());
+        assertEquals("content 4", cache.get(deleted, loader).response().content());
+    }
+
+    @Test
+    void get_bypassesCache_whenDisabled() {
+        MessageResponseCache cache = new MessageResponseCache(false, 100);
+        UUID id = UUID.randomUUID();
+
+        cache.get(id, loader);
+        cache.get(id, loader);
+
+        assertEquals(2, loads.get());
+        assertNull(cache.getIfPresent(id));
+    }
+}
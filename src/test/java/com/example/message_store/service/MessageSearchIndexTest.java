@@ -0,0 +1,203 @@
+package com.example.message_store.service;
+
+import com.example.message_store.dto.CursorPageResponse;
+import com.example.message_store.dto.MessageContent;
+import com.example.message_store.dto.MessageSearchHit;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.util.CursorCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageSearchIndexTest {
+
+    @Mock
+    private MessageStore messageStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MessageSearchIndex index;
+
+    private final Map<UUID, String> stored = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        when(messageStore.findContentById(any())).thenAnswer(invocation -> {
+            UUID id = invocation.getArgument(0);
+            return Optional.ofNullable(stored.get(id)).map(content -> new MessageContent(id, content));
+        });
+        when(messageStore.findContentByIds(any())).thenAnswer(invocation -> {
+            Collection<UUID> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .filter(stored::containsKey)
+                    .map(id -> new MessageContent(id, stored.get(id)))
+                    .toList();
+        });
+        index = new MessageSearchIndex(messageStore, transactionManager, "", false);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void search_ranksMessagesMatchingMoreTermsFirst() {
+        UUID both = UUID.randomUUID();
+        UUID one = UUID.randomUUID();
+        create(one, "the quarterly report is late");
+        create(both, "quarterly budget report attached");
+        create(UUID.randomUUID(), "lunch on friday");
+
+        CursorPageResponse<MessageSearchHit> page = index.search("budget report", null, 10);
+
+        assertEquals(2, page.size());
+        assertEquals(both, page.content().get(0).uuid());
+        assertEquals(one, page.content().get(1).uuid());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void search_cursorVisitsEveryHitOnce() {
+        Set<UUID> expected = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            UUID id = UUID.randomUUID();
+            expected.add(id);
+            create(id, "status update number " + i);
+        }
+
+        Set<UUID> seen = new HashSet<>();
+        CursorCodec.RankedPosition after = null;
+        CursorPageResponse<MessageSearchHit> page;
+        do {
+            page = index.search("status", after, 10);
+            page.content().forEach(hit -> assertTrue(seen.add(hit.uuid())));
+            after = page.hasNext() ? CursorCodec.decodeRanked(page.nextCursor()) : null;
+        } while (after != null);
+
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void onMessageEvent_updatesAndRemovesDocuments() {
+        UUID id = UUID.randomUUID();
+        create(id, "original wording");
+        stored.put(id, "revised wording");
+        index.onMessageEvent(MessageEvent.updated(id, "revised wording"));
+
+        assertEquals(0, index.search("original", null, 10).size());
+        assertEquals("revised wording", index.search("revised", null, 10).content().get(0).content());
+
+        stored.remove(id);
+        index.onMessageEvent(MessageEvent.deleted(id, null));
+
+        assertEquals(0, index.search("wording", null, 10).size());
+        assertEquals(0, index.getDocumentCount());
+    }
+
+    @Test
+    void rebuild_replacesIndexWithDatabaseContent() {
+        UUID stale = UUID.randomUUID();
+        UUID current = UUID.randomUUID();
+        create(stale, "stale entry");
+        stored.clear();
+        stored.put(current, "current entry");
+        when(messageStore.streamAllContent()).thenReturn(Stream.of(new MessageContent(current, "current entry")));
+
+        assertEquals(1, index.rebuild());
+
+        List<MessageSearchHit> hits = index.search("entry", null, 10).content();
+        assertEquals(1, hits.size());
+        assertEquals(current, hits.get(0).uuid());
+    }
+
+    @Test
+    void rebuild_rereadsMessagesChangedWhileRunning() {
+        UUID id = UUID.randomUUID();
+        when(messageStore.streamAllContent()).thenAnswer(invocation -> {
+            index.onMessageEvent(MessageEvent.updated(id, "newer content"));
+            return Stream.of(new MessageContent(id, "older content"));
+        });
+        stored.put(id, "newer content");
+
+        index.rebuild();
+
+        assertEquals(0, index.search("older", null, 10).size());
+        assertEquals(1, index.search("newer", null, 10).size());
+    }
+
+    @Test
+    void search_returnsEmptyPage_whenQueryHasNoTerms() {
+        create(UUID.randomUUID(), "some content");
+
+        assertEquals(0, index.search("?! ...", null, 10).size());
+    }
+
+    @Test
+    void search_readsContentFromStore_andSkipsMessagesGoneFromIt() {
+        UUID kept = UUID.randomUUID();
+        UUID gone = UUID.randomUUID();
+        create(kept, "weekly digest");
+        create(gone, "weekly digest");
+        stored.put(kept, "weekly digest, edited");
+        stored.remove(gone);
+
+        List<MessageSearchHit> hits = index.search("digest", null, 10).content();
+
+        assertEquals(1, hits.size());
+        assertEquals(kept, hits.get(0).uuid());
+        assertEquals("weekly digest, edited", hits.get(0).content());
+        verify(messageStore, times(1)).findContentByIds(any());
+        verify(messageStore, never()).findContentById(any());
+    }
+
+    @Test
+    void search_fillsPagesPastMessagesExpiredButNotYetSwept() {
+        Set<UUID> live = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            UUID id = UUID.randomUUID();
+            create(id, "reminder " + i);
+            if (i % 4 == 0) {
+                stored.remove(id);
+            } else {
+                live.add(id);
+            }
+        }
+
+        CursorPageResponse<MessageSearchHit> first = index.search("reminder", null, 5);
+        CursorPageResponse<MessageSearchHit> second = index.search("reminder", CursorCodec.decodeRanked(first.nextCursor()), 5);
+
+        assertEquals(5, first.size());
+        assertTrue(first.hasNext());
+        assertEquals(4, second.size());
+        assertFalse(second.hasNext());
+        Set<UUID> seen = new HashSet<>();
+        first.content().forEach(hit -> seen.add(hit.uuid()));
+        second.content().forEach(hit -> seen.add(hit.uuid()));
+        assertEquals(live, seen);
+    }
+
+    private void create(UUID id, String content) {
+        stored.put(id, content);
+        index.onMessageEvent(MessageEvent.created(id, null, content));
+    }
+}
@@ -1,23 +1,42 @@
 package com.example.message_store.service;
 
+import com.example.message_store.dto.MessageContent;
 import com.example.message_store.dto.MessageCreateRequest;
+import com.example.message_store.dto.MessageKey;
+import com.example.message_store.dto.MessageListItem;
+import com.example.message_store.dto.MessageResponse;
+import com.example.message_store.dto.VersionedMessageResponse;
+import com.example.message_store.exceptions.MessageAccessDeniedException;
 import com.example.message_store.exceptions.MessageNotFoundException;
+import com.example.message_store.exceptions.PreconditionFailedException;
 import com.example.message_store.model.Client;
 import com.example.message_store.model.Message;
-import com.example.message_store.repository.MessageRepository;
+import com.example.message_store.repository.MessageStore;
+import com.example.message_store.util.CursorCodec;
+import com.example.message_store.util.DeflateCodec;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,7 +44,28 @@ import static org.mockito.Mockito.*;
 class MessageServiceTest {
 
     @Mock
-    private MessageRepository messageRepository;
+    private MessageStore messageStore;
+
+    @Mock
+    private MessageResponseCache messageResponseCache;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private MessageSearchIndex messageSearchIndex;
+
+    @Mock
+    private MessageCounters messageCounters;
+
+    @Mock
+    private ClientService clientService;
+
+    @Spy
+    private MessageContentCompressor messageContentCompressor = new MessageContentCompressor(true, 1024, 1);
 
     @InjectMocks
     private MessageService messageService;
@@ -38,35 +78,155 @@ class MessageServiceTest {
     @Test
     void testGetAll_Ok() {
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Message> page = new PageImpl<>(List.of(new Message("content", new Client())));
-        when(messageRepository.findAll(pageable)).thenReturn(page);
+        Page<MessageResponse> page = new PageImpl<>(List.of(new MessageResponse("content")));
+        when(messageStore.findAllResponses(pageable)).thenReturn(page);
 
-        Page<Message> result = messageService.getAll(pageable);
+        Page<MessageResponse> result = messageService.getAll(pageable);
 
         assertEquals(1, result.getTotalElements());
-        verify(messageRepository, times(1)).findAll(pageable);
+        verify(messageStore, times(1)).findAllResponses(pageable);
+        verify(messageStore, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    void testGetAll_exactCounters_takesTotalFromCounters() {
+        Pageable pageable = PageRequest.of(0, 1);
+        when(messageCounters.isTotalExact(any())).thenReturn(true);
+        when(messageCounters.getTotal()).thenReturn(42L);
+        when(messageStore.findResponses(pageable)).thenReturn(List.of(new MessageResponse("content")));
+
+        Page<MessageResponse> result = messageService.getAll(pageable);
+
+        assertEquals(42, result.getTotalElements());
+        assertEquals(1, result.getNumberOfElements());
+        verify(messageStore, never()).findAllResponses(any());
+    }
+
+    @Test
+    void testGetAfter_firstPage() {
+        Slice<MessageContent> slice = new SliceImpl<>(List.of(new MessageContent(UUID.randomUUID(), "content")));
+        when(messageStore.findContentByOrderByUuidAsc(PageRequest.of(0, 10))).thenReturn(slice);
+
+        Slice<MessageContent> result = messageService.getAfter(null, 10);
+
+        assertEquals(1, result.getNumberOfElements());
+        verify(messageStore, never()).findContentByUuidGreaterThanOrderByUuidAsc(any(), any());
+    }
+
+    @Test
+    void testGetAfter_continuesAfterCursor() {
+        UUID after = UUID.randomUUID();
+        Slice<MessageContent> slice = new SliceImpl<>(List.of(new MessageContent(UUID.randomUUID(), "content")));
+        when(messageStore.findContentByUuidGreaterThanOrderByUuidAsc(after, PageRequest.of(0, 10))).thenReturn(slice);
+
+        Slice<MessageContent> result = messageService.getAfter(after, 10);
+
+        assertEquals(1, result.getNumberOfElements());
+        verify(messageStore, never()).count();
+    }
+
+    @Test
+    void testGetRecentByClient_continuesBeforeCursor() {
+        UUID clientId = UUID.randomUUID();
+        CursorCodec.TimedPosition after = new CursorCodec.TimedPosition(Instant.parse("2026-01-01T10:00:00Z"), UUID.randomUUID());
+        Slice<MessageListItem> slice = new SliceImpl<>(List.of(
+                new MessageListItem(UUID.randomUUID(), "content", Instant.parse("2026-01-01T09:00:00Z"))));
+        when(messageStore.findRecentByClientIdBefore(clientId, after.createdAt(), after.uuid(), PageRequest.of(0, 10))).thenReturn(slice);
+
+        Slice<MessageListItem> result = messageService.getRecentByClient(clientId, after, 10);
+
+        assertEquals(1, result.getNumberOfElements());
+        verify(messageStore, never()).findRecentByClientId(any(), any());
     }
 
     @Test
     void testGetById_oK() {
         UUID id = UUID.randomUUID();
         Message message = new Message("content", new Client());
-        when(messageRepository.findById(id)).thenReturn(Optional.of(message));
+        when(messageStore.findById(id)).thenReturn(Optional.of(message));
 
         Message result = messageService.getById(id);
 
         assertNotNull(result);
         assertEquals("content", result.getContent());
-        verify(messageRepository, times(1)).findById(id);
+        verify(messageStore, times(1)).findById(id);
     }
 
     @Test
     void testGetById_MessageNotFoundException() {
         UUID id = UUID.randomUUID();
-        when(messageRepository.findById(id)).thenReturn(Optional.empty());
+        when(messageStore.findById(id)).thenReturn(Optional.empty());
 
         assertThrows(MessageNotFoundException.class, () -> messageService.getById(id));
-        verify(messageRepository, times(1)).findById(id);
+        verify(messageStore, times(1)).findById(id);
+    }
+
+    @Test
+    void testGetResponseById_loadsThroughCache() {
+        UUID id = UUID.randomUUID();
+        when(messageStore.findResponseById(id)).thenReturn(Optional.of(new VersionedMessageResponse(new MessageResponse("content"), 3)));
+        when(messageResponseCache.get(any(), any())).thenAnswer(invocation ->
+                invocation.<Function<UUID, VersionedMessageResponse>>getArgument(1).apply(invocation.getArgument(0)));
+
+        VersionedMessageResponse result = messageService.getResponseById(id);
+
+        assertEquals("content", result.response().content());
+        assertEquals(3, result.version());
+        verify(messageResponseCache, times(1)).get(eq(id), any());
+        verify(messageStore, never()).findById(any());
+        assertThrows(MessageNotFoundException.class, () -> messageService.getResponseById(UUID.randomUUID()));
+    }
+
+    @Test
+    void testGetResponseById_cachedResponseOfExpiredMessage_notFound() {
+        UUID id = UUID.randomUUID();
+        when(messageResponseCache.get(eq(id), any())).thenReturn(
+                new VersionedMessageResponse(new MessageResponse("content"), 0, Instant.now().minusSeconds(1)));
+        when(messageResponseCache.getIfPresent(id)).thenReturn(
+                new VersionedMessageResponse(new MessageResponse("content"), 0, Instant.now().minusSeconds(1)));
+        when(messageStore.findVersionById(id)).thenReturn(Optional.empty());
+
+        assertThrows(MessageNotFoundException.class, () -> messageService.getResponseById(id));
+        assertThrows(MessageNotFoundException.class, () -> messageService.getVersion(id));
+    }
+
+    @Test
+    void testGetVersion_prefersCachedResponse() {
+        UUID cached = UUID.randomUUID();
+        UUID uncached = UUID.randomUUID();
+        when(messageResponseCache.getIfPresent(cached)).thenReturn(new VersionedMessageResponse(new MessageResponse("content"), 2));
+        when(messageStore.findVersionById(uncached)).thenReturn(Optional.of(5L));
+
+        assertEquals(2, messageService.getVersion(cached));
+        assertEquals(5, messageService.getVersion(uncached));
+        assertThrows(MessageNotFoundException.class, () -> messageService.getVersion(UUID.randomUUID()));
+        verify(messageStore, never()).findVersionById(cached);
+        verify(messageStore, never()).findById(any());
+    }
+
+    @Test
+    void testExport_clearsPersistenceContextPerFetchChunk() {
+        int total = MessageStore.EXPORT_FETCH_SIZE * 2 + 1;
+        when(messageStore.streamAll()).thenReturn(
+                IntStream.range(0, total).mapToObj(i -> new Message("content " + i, new Client())));
+        List<Message> exported = new ArrayList<>();
+
+        long count = messageService.export(null, exported::add);
+
+        assertEquals(total, count);
+        assertEquals(total, exported.size());
+        verify(entityManager, times(2)).clear();
+        verify(messageStore, never()).streamAllByClientUsername(any());
+    }
+
+    @Test
+    void testExport_filtersByClient() {
+        when(messageStore.streamAllByClientUsername("client1")).thenReturn(Stream.of(new Message("content", new Client())));
+
+        long count = messageService.export("client1", message -> { });
+
+        assertEquals(1, count);
+        verify(messageStore, never()).streamAll();
     }
 
     @Test
@@ -74,59 +234,206 @@ class MessageServiceTest {
         MessageCreateRequest request = new MessageCreateRequest("content");
         Client client = new Client();
         Message message = new Message("content", client);
-        when(messageRepository.save(any(Message.class))).thenReturn(message);
+        when(messageStore.save(any(Message.class))).thenReturn(message);
 
         Message result = messageService.save(request, client);
 
         assertNotNull(result);
         assertEquals("content", result.getContent());
-        verify(messageRepository, times(1)).save(any(Message.class));
+        verify(messageStore, times(1)).save(any(Message.class));
+    }
+
+    @Test
+    void testSave_unknownClient_storesMessageWithoutOwner() {
+        when(messageStore.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Message result = messageService.save(new MessageCreateRequest("content"), null);
+
+        assertNull(result.getClient());
+        verify(eventPublisher).publishEvent(MessageEvent.created(result.getUuid(), null, "content"));
+    }
+
+    @Test
+    void testSave_withTtl_setsExpiry() {
+        when(messageStore.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Instant before = Instant.now();
+
+        Message result = messageService.save(new MessageCreateRequest("content", 60L), new Client());
+
+        assertFalse(result.getExpiresAt().isBefore(before.plusSeconds(60)));
+        assertFalse(result.getExpiresAt().isAfter(Instant.now().plusSeconds(60)));
+        assertNull(messageService.save(new MessageCreateRequest("content"), new Client()).getExpiresAt());
+    }
+
+    @Test
+    void testPurgeExpired_deletesBatchAndPublishesDeletions() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID clientId = UUID.randomUUID();
+        when(messageStore.findExpired(any(), any()))
+                .thenReturn(List.of(new MessageKey(first, clientId), new MessageKey(second, clientId)));
+        when(messageStore.deleteExpired(eq(List.of(first, second)), any())).thenReturn(List.of(first, second));
+
+        assertEquals(new MessageService.PurgeResult(2, false), messageService.purgeExpired(100));
+        assertEquals(new MessageService.PurgeResult(2, true), messageService.purgeExpired(2));
+
+        verify(messageStore, times(2)).deleteExpired(any(), any());
+
+        verify(eventPublisher, times(2)).publishEvent(MessageEvent.deleted(first, clientId));
+        verify(eventPublisher, times(2)).publishEvent(MessageEvent.deleted(second, clientId));
+    }
+
+    @Test
+    void testPurgeExpired_skipsMessagesDeletedMeanwhile() {
+        UUID deletedByOwner = UUID.randomUUID();
+        UUID swept = UUID.randomUUID();
+        UUID clientId = UUID.randomUUID();
+        when(messageStore.findExpired(any(), any()))
+                .thenReturn(List.of(new MessageKey(deletedByOwner, clientId), new MessageKey(swept, clientId)));
+        when(messageStore.deleteExpired(eq(List.of(deletedByOwner, swept)), any())).thenReturn(List.of(swept));
+
+        assertEquals(new MessageService.PurgeResult(1, true), messageService.purgeExpired(2));
+
+        verify(eventPublisher, never()).publishEvent(MessageEvent.deleted(deletedByOwner, clientId));
+        verify(eventPublisher).publishEvent(MessageEvent.deleted(swept, clientId));
+    }
+
+    @Test
+    void testPurgeExpired_nothingExpired() {
+        when(messageStore.findExpired(any(), any())).thenReturn(List.of());
+
+        assertEquals(new MessageService.PurgeResult(0, false), messageService.purgeExpired(100));
+
+        verify(messageStore, never()).deleteExpired(any(), any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void testSave_largeContentStoredDeflatedAndPublishedPlain() {
+        String large = "{\"event\":\"order.created\",\"total\":42}".repeat(50);
+        Client client = new Client(UUID.randomUUID(), "client1");
+        when(messageStore.save(any(Message.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Message result = messageService.save(new MessageCreateRequest(large), client);
+
+        assertTrue(result.isCompressed());
+        assertEquals(large, result.getContent());
+        verify(eventPublisher).publishEvent(MessageEvent.created(result.getUuid(), client.getUuid(), large));
+    }
+
+    @Test
+    void testSaveAll_Ok() {
+        Client client = new Client();
+        List<MessageCreateRequest> requests = List.of(new MessageCreateRequest("first"), new MessageCreateRequest("second"));
+        when(messageStore.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<Message> result = messageService.saveAll(requests, client);
+
+        assertEquals(List.of("first", "second"), result.stream().map(Message::getContent).toList());
+        assertTrue(result.stream().allMatch(message -> message.getClient() == client));
+        verify(messageStore, times(1)).saveAll(anyList());
+        verify(messageStore, never()).save(any(Message.class));
     }
 
     @Test
     void testUpdate_Ok() {
         UUID id = UUID.randomUUID();
-        Message existingMessage = new Message("old content", new Client());
         MessageCreateRequest newMessage = new MessageCreateRequest("new content");
-        when(messageRepository.findById(id)).thenReturn(Optional.of(existingMessage));
-        when(messageRepository.save(existingMessage)).thenReturn(existingMessage);
+        when(messageStore.updateContentIfOwner(id, "client1", "new content", null, null)).thenReturn(Optional.of(3L));
 
-        Message result = messageService.update(id, newMessage);
+        assertEquals(3L, messageService.update(id, newMessage, "client1"));
 
-        assertNotNull(result);
-        assertEquals("new content", result.getContent());
+        verify(messageStore, times(1)).updateContentIfOwner(id, "client1", "new content", null, null);
+        verify(eventPublisher, times(1)).publishEvent(MessageEvent.updated(id, "new content"));
+        verify(messageStore, never()).existsById(id);
+        verify(messageStore, never()).findById(id);
+    }
+
+    @Test
+    void testUpdate_largeContentPassedDeflated() {
+        UUID id = UUID.randomUUID();
+        String large = "{\"event\":\"order.updated\",\"total\":42}".repeat(50);
+        when(messageStore.updateContentIfOwner(eq(id), eq("client1"), isNull(), any(byte[].class), isNull())).thenReturn(Optional.of(1L));
+
+        messageService.update(id, new MessageCreateRequest(large), "client1");
 
-        verify(messageRepository, times(1)).findById(id);
-        verify(messageRepository, times(1)).save(existingMessage);
+        verify(messageStore).updateContentIfOwner(eq(id), eq("client1"), isNull(), argThat(deflated -> large.equals(DeflateCodec.inflate(deflated))), isNull());
+        verify(eventPublisher).publishEvent(MessageEvent.updated(id, large));
     }
 
     @Test
     void testUpdate_MessageNotFoundException() {
         UUID id = UUID.randomUUID();
         MessageCreateRequest newMessage = new MessageCreateRequest("new content");
-        when(messageRepository.findById(id)).thenReturn(Optional.empty());
+        when(messageStore.updateContentIfOwner(id, "client1", "new content", null, null)).thenReturn(Optional.empty());
+        when(messageStore.existsById(id)).thenReturn(false);
+
+        assertThrows(MessageNotFoundException.class, () -> messageService.update(id, newMessage, "client1"));
+
+        verify(messageStore, never()).save(any(Message.class));
+    }
+
+    @Test
+    void testUpdate_MessageAccessDeniedException() {
+        UUID id = UUID.randomUUID();
+        MessageCreateRequest newMessage = new MessageCreateRequest("new content");
+        when(messageStore.updateContentIfOwner(id, "client2", "new content", null, null)).thenReturn(Optional.empty());
+        when(messageStore.existsById(id)).thenReturn(true);
 
-        assertThrows(MessageNotFoundException.class, () -> messageService.update(id, newMessage));
+        assertThrows(MessageAccessDeniedException.class, () -> messageService.update(id, newMessage, "client2"));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void testUpdate_staleVersion_PreconditionFailedException() {
+        UUID id = UUID.randomUUID();
+        MessageCreateRequest newMessage = new MessageCreateRequest("new content");
+        when(messageStore.updateContentIfOwner(id, "client1", "new content", null, 1L)).thenReturn(Optional.empty());
+        when(messageStore.findVersionById(id)).thenReturn(Optional.of(2L));
 
-        verify(messageRepository, times(1)).findById(id);
-        verify(messageRepository, never()).save(any(Message.class));
+        assertThrows(PreconditionFailedException.class, () -> messageService.update(id, newMessage, "client1", 1L));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void testUpdate_expectedVersionOfForeignMessage_MessageAccessDeniedException() {
+        UUID id = UUID.randomUUID();
+        MessageCreateRequest newMessage = new MessageCreateRequest("new content");
+        when(messageStore.updateContentIfOwner(id, "client2", "new content", null, 2L)).thenReturn(Optional.empty());
+        when(messageStore.findVersionById(id)).thenReturn(Optional.of(2L));
+
+        assertThrows(MessageAccessDeniedException.class, () -> messageService.update(id, newMessage, "client2", 2L));
     }
 
     @Test
     void testDeleteById_Ok() {
         UUID id = UUID.randomUUID();
+        UUID clientId = UUID.randomUUID();
+        when(messageStore.deleteIfOwner(id, "client1")).thenReturn(1);
+        when(clientService.getClientId("client1")).thenReturn(clientId);
 
-        messageService.deleteById(id);
+        messageService.deleteById(id, "client1");
 
-        verify(messageRepository, times(1)).deleteById(id);
+        verify(messageStore, times(1)).deleteIfOwner(id, "client1");
+        verify(eventPublisher, times(1)).publishEvent(MessageEvent.deleted(id, clientId));
+        verify(messageStore, never()).existsById(id);
     }
 
     @Test
     void testDeleteById_MessageNotFoundException() {
         UUID id = UUID.randomUUID();
+        when(messageStore.deleteIfOwner(id, "client1")).thenReturn(0);
+        when(messageStore.existsById(id)).thenReturn(false);
 
-        messageService.deleteById(id);
+        assertThrows(MessageNotFoundException.class, () -> messageService.deleteById(id, "client1"));
+    }
+
+    @Test
+    void testDeleteById_MessageAccessDeniedException() {
+        UUID id = UUID.randomUUID();
+        when(messageStore.deleteIfOwner(id, "client2")).thenReturn(0);
+        when(messageStore.existsById(id)).thenReturn(true);
 
-        verify(messageRepository, times(1)).deleteById(id);
+        assertThrows(MessageAccessDeniedException.class, () -> messageService.deleteById(id, "client2"));
     }
 }
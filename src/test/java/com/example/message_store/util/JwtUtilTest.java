@@ -0,0 +1,73 @@
+package com.example.message_store.util;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "secret-signature-verification-key";
+    private static final long ONE_HOUR_MILLIS = 60 * 60 * 1000;
+
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 100);
+    }
+
+    @Test
+    void extractUsername_returnsSubject_whenTokenValid() {
+        String token = JwtGenerator.generateToken("client1", "admin", "example.com", ONE_HOUR_MILLIS);
+
+        assertEquals("client1", jwtUtil.extractUsername(token));
+        assertEquals(0, jwtUtil.getCacheHits());
+        assertEquals(1, jwtUtil.getCacheMisses());
+    }
+
+    @Test
+    void extractUsername_servesRepeatTokenFromCache() {
+        String token = JwtGenerator.generateToken("client1", "admin", "example.com", ONE_HOUR_MILLIS);
+
+        jwtUtil.extractUsername(token);
+        jwtUtil.extractUsername(token);
+
+        assertEquals("client1", jwtUtil.extractUsername(token));
+        assertEquals(2, jwtUtil.getCacheHits());
+        assertEquals(1, jwtUtil.getCacheMisses());
+    }
+
+    @Test
+    void verify_returnsSubjectAndRoleFromOneCacheLookup() {
+        String token = JwtGenerator.generateToken("client1", "admin", "example.com", ONE_HOUR_MILLIS);
+
+        JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+
+        assertEquals("client1", verified.subject());
+        assertEquals("admin", verified.role());
+        assertEquals(0, jwtUtil.getCacheHits());
+        assertEquals(1, jwtUtil.getCacheMisses());
+        assertNull(jwtUtil.verify(JwtGenerator.generateToken("client1", null, "example.com", ONE_HOUR_MILLIS)).role());
+    }
+
+    @Test
+    void extractUsername_throwsException_whenSignatureInvalid() {
+        String token = JwtGenerator.generateToken("client1", "admin", "example.com", ONE_HOUR_MILLIS);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThrows(SignatureException.class, () -> jwtUtil.extractUsername(tampered));
+        assertThrows(SignatureException.class, () -> jwtUtil.extractUsername(tampered));
+        assertEquals(0, jwtUtil.getCacheHits());
+    }
+
+    @Test
+    void extractUsername_throwsException_whenTokenExpired() {
+        String token = JwtGenerator.generateToken("client1", "admin", "example.com", -ONE_HOUR_MILLIS);
+
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.extractUsername(token));
+        assertEquals(0, jwtUtil.getCacheHits());
+    }
+}